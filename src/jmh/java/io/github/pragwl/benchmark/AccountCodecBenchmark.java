@@ -0,0 +1,84 @@
+package io.github.pragwl.benchmark;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.domain.AccountCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link AccountCodec} with Java serialization for a single account record. The encoded
+ * sizes of both formats are printed once per trial.
+ *
+ * <p>Run with {@code gradle jmh -PjmhIncludes=AccountCodecBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AccountCodecBenchmark {
+
+    private Account account;
+    private byte[] javaSerialized;
+    private byte[] codecEncoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        account = Account.newAccount("github", "someone@example.com", "correct horse battery");
+        account.setUpdateOn(LocalDateTime.now());
+        javaSerialized = javaSerialize(account);
+        codecEncoded = AccountCodec.encode(account);
+        System.out.printf(
+                "%nEncoded account size: Java serialization %d bytes, codec %d bytes%n",
+                javaSerialized.length, codecEncoded.length);
+    }
+
+    @Benchmark
+    public byte[] encodeJavaSerialization() throws IOException {
+        return javaSerialize(account);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return AccountCodec.encode(account);
+    }
+
+    @Benchmark
+    public Object decodeJavaSerialization() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois =
+                new ObjectInputStream(new ByteArrayInputStream(javaSerialized))) {
+            return ois.readObject();
+        }
+    }
+
+    @Benchmark
+    public Account decodeCodec() {
+        return AccountCodec.decode(ByteBuffer.wrap(codecEncoded));
+    }
+
+    private static byte[] javaSerialize(Object obj) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(obj);
+        }
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.pragwl.benchmark;
+
+import io.github.pragwl.manager.AccountImport;
+import io.github.pragwl.utility.EncryptionUtility;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Generated vaults and encryption key for the benchmarks, kept in {@code build/jmh-fixtures} (or
+ * {@code credvault.benchmark.fixtures}) and reused across runs.
+ *
+ * <p>The vault store, the encryption key and the managers are loaded once per JVM from the
+ * {@code credvault.vault.dir} and {@code credvault.key.file} system properties. The methods of this
+ * class therefore only set those properties and must run before any of these classes is loaded.
+ * Fixture vaults are generated by importing a CSV file in a separate JVM, so generating one does
+ * not warm up the JVM under measurement.
+ */
+final class BenchmarkFixture {
+
+    private static final Path ROOT =
+            Paths.get(System.getProperty("credvault.benchmark.fixtures", "build/jmh-fixtures"));
+
+    private BenchmarkFixture() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Points the vault encryption key at the fixture key, generating it if needed.
+     *
+     * @return The fixture key file.
+     */
+    static Path useKey() {
+        Path keyFile = ROOT.resolve("encflekey.txt");
+        try {
+            if (!Files.exists(keyFile)) {
+                Files.createDirectories(ROOT);
+                Path tempFile = ROOT.resolve("encflekey.txt.tmp");
+                Files.writeString(tempFile, EncryptionUtility.generateEncryptionKey(256));
+                Files.move(tempFile, keyFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create the fixture key", e);
+        }
+        System.setProperty("credvault.key.file", keyFile.toString());
+        return keyFile;
+    }
+
+    /**
+     * Creates an empty scratch directory for files written by a benchmark.
+     *
+     * @param name The name of the directory.
+     * @return The directory.
+     */
+    static Path scratchDirectory(String name) {
+        Path directory = ROOT.resolve("scratch").resolve(name);
+        try {
+            deleteRecursively(directory);
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create " + directory, e);
+        }
+        return directory;
+    }
+
+    /**
+     * Points the vault store at a fixture vault of the given number of active accounts, generating
+     * it in a separate JVM if needed.
+     *
+     * @param records The number of accounts.
+     * @return The vault directory.
+     */
+    static Path useVault(int records) {
+        Path keyFile = useKey();
+        Path directory = ROOT.resolve("vault-" + records);
+        if (!Files.exists(directory)) {
+            generate(records, directory, keyFile);
+        }
+        System.setProperty("credvault.vault.dir", directory.toString());
+        return directory;
+    }
+
+    private static void generate(int records, Path directory, Path keyFile) {
+        Path tempDirectory = ROOT.resolve("vault-" + records + ".tmp");
+        try {
+            deleteRecursively(tempDirectory);
+            Files.createDirectories(tempDirectory);
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add("-Dcredvault.key.file=" + keyFile);
+            command.add("-Dcredvault.vault.dir=" + tempDirectory);
+            command.add(BenchmarkFixture.class.getName());
+            command.add(Integer.toString(records));
+            command.add(tempDirectory.resolve("accounts.csv").toString());
+            Process process =
+                    new ProcessBuilder(command)
+                            .redirectErrorStream(true)
+                            .redirectOutput(ROOT.resolve("vault-" + records + ".log").toFile())
+                            .start();
+            if (process.waitFor() != 0) {
+                throw new IllegalStateException(
+                        "Failed to generate the fixture vault of " + records + " records");
+            }
+            Files.delete(tempDirectory.resolve("accounts.csv"));
+            Files.move(tempDirectory, directory, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to generate " + directory, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating " + directory, e);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Generates a fixture vault by writing a CSV file of accounts and importing it into the vault
+     * the system properties point at.
+     *
+     * @param args The number of accounts and the CSV file to write.
+     * @throws IOException if writing or importing the file fails.
+     */
+    public static void main(String[] args) throws IOException {
+        int records = Integer.parseInt(args[0]);
+        Path csv = Paths.get(args[1]);
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("name,id,password\n");
+            for (int i = 0; i < records; i++) {
+                writer.write(
+                        String.format(
+                                "service-%06d,user%06d@example.com,password-%06d%n", i, i, i));
+            }
+        }
+        AccountImport.Result result = AccountImport.importFile(csv, AccountImport.Format.CSV);
+        System.out.printf(
+                "Generated %d accounts in %s in %d ms%n",
+                result.getImported(),
+                new File(System.getProperty("credvault.vault.dir")).getAbsolutePath(),
+                result.getElapsedMillis());
+        // The store and the write-behind queue keep non-daemon threads
+        System.exit(result.getImported() == records ? 0 : 1);
+    }
+}
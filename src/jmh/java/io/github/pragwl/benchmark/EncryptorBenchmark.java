@@ -0,0 +1,82 @@
+package io.github.pragwl.benchmark;
+
+import io.github.pragwl.utility.EncryptionUtility;
+import io.github.pragwl.utility.Encryptor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Encryptor} for payloads of different sizes. The derived key is cached after the
+ * first call, so {@link #encrypt()} and {@link #decrypt()} measure the cipher alone, while {@link
+ * #encryptWithNewSalt()} includes the key derivation every record with its own salt pays once.
+ * {@link #encryptDirect()} and {@link #decryptDirect()} use a random key with AES-GCM directly, as
+ * passwords do, without any key derivation.
+ *
+ * <p>Run with {@code gradle jmh -PjmhIncludes=EncryptorBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EncryptorBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    private int payloadSize;
+
+    private byte[] payload;
+    private byte[] salt;
+    private String encryptionKey;
+    private byte[] encrypted;
+    private byte[] key;
+    private byte[] nonce;
+    private byte[] encryptedDirect;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = EncryptionUtility.generateSalt(payloadSize);
+        salt = EncryptionUtility.generateSalt(8);
+        encryptionKey = EncryptionUtility.generateEncryptionKey(256);
+        encrypted = Encryptor.encrypt(payload, salt, encryptionKey);
+        key = EncryptionUtility.generateSalt(32);
+        nonce = EncryptionUtility.generateSalt(12);
+        encryptedDirect = Encryptor.encryptAead(payload, nonce, key);
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return Encryptor.encrypt(payload, salt, encryptionKey);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return Encryptor.decrypt(encrypted, salt, encryptionKey);
+    }
+
+    @Benchmark
+    public byte[] encryptWithNewSalt() {
+        return Encryptor.encrypt(payload, EncryptionUtility.generateSalt(8), encryptionKey);
+    }
+
+    @Benchmark
+    public byte[] encryptDirect() {
+        return Encryptor.encryptAead(payload, EncryptionUtility.generateSalt(12), key);
+    }
+
+    @Benchmark
+    public byte[] decryptDirect() {
+        return Encryptor.decryptAead(encryptedDirect, nonce, key);
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.pragwl.benchmark;
+
+import io.github.pragwl.utility.EncryptionUtility;
+import io.github.pragwl.utility.MasterKey;
+import io.github.pragwl.utility.RecordFormat;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the one-time cost of unlocking the {@link MasterKey} separately from the cost every
+ * record pays afterwards. {@link #unlock} derives the master key with the given PBKDF2 iteration
+ * count, in milliseconds; {@link #recordKey}, {@link #encryptRecord} and {@link #decryptRecord}
+ * expand a record subkey with HKDF and encrypt or decrypt a 1 KiB record, in microseconds.
+ *
+ * <p>Run with {@code gradle jmh -PjmhIncludes=MasterKeyBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MasterKeyBenchmark {
+
+    @State(Scope.Thread)
+    public static class Unlock {
+
+        @Param({"65536", "210000", "600000"})
+        private int iterations;
+
+        private String secret;
+        private byte[] salt;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            secret = EncryptionUtility.generateEncryptionKey(256);
+            salt = EncryptionUtility.generateSalt(MasterKey.SALT_LENGTH);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Session {
+
+        private String secret;
+        private MasterKey masterKey;
+        private byte[] recordSalt;
+        private byte[] plaintext;
+        private byte[] record;
+        private ByteBuffer output;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            secret = EncryptionUtility.generateEncryptionKey(256);
+            // Few iterations, since only the cost per record is measured
+            masterKey =
+                    MasterKey.unlock(
+                            secret, EncryptionUtility.generateSalt(MasterKey.SALT_LENGTH), 1000);
+            recordSalt = EncryptionUtility.generateSalt(16);
+            plaintext = EncryptionUtility.generateSalt(1024);
+            record = RecordFormat.encrypt(plaintext, masterKey);
+            output = ByteBuffer.allocate(2048);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            MasterKey.destroyAll();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MasterKey unlock(Unlock state) {
+        MasterKey masterKey = MasterKey.derive(state.secret, state.salt, state.iterations);
+        masterKey.destroy();
+        return masterKey;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] recordKey(Session session) {
+        return session.masterKey.recordKey(session.recordSalt);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] encryptRecord(Session session) {
+        return RecordFormat.encrypt(session.plaintext, session.masterKey);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ByteBuffer decryptRecord(Session session) {
+        return RecordFormat.decrypt(
+                ByteBuffer.wrap(session.record), session.output, null, session.secret);
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.pragwl.benchmark;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.utility.SerializationUtil;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link SerializationUtil} for an account, which is encoded with the account codec, and
+ * for a byte array of the given size, which goes through Java serialization. The file benchmarks
+ * include writing or reading a file in a scratch directory under the benchmark fixtures.
+ *
+ * <p>Run with {@code gradle jmh -PjmhIncludes=SerializationBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"16", "1024", "65536"})
+    private int payloadSize;
+
+    private Account account;
+    private byte[] payload;
+    private byte[] encryptedAccount;
+    private byte[] encryptedPayload;
+    private String directory;
+    private String fileName;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Must run before SerializationUtil is loaded, since it reads the key once
+        BenchmarkFixture.useKey();
+        Path scratch =
+                BenchmarkFixture.scratchDirectory(
+                        "serialization-" + Thread.currentThread().getId());
+        directory = scratch.toString() + File.separator;
+        fileName = "account";
+        account = Account.newAccount("github", "someone@example.com", "correct horse battery");
+        payload = new byte[payloadSize];
+        encryptedAccount = SerializationUtil.toEncryptedBytes(account);
+        encryptedPayload = SerializationUtil.toEncryptedBytes(payload);
+        SerializationUtil.serializeObject(account, directory, fileName);
+    }
+
+    @Benchmark
+    public byte[] encryptAccount() {
+        return SerializationUtil.toEncryptedBytes(account);
+    }
+
+    @Benchmark
+    public Object decryptAccount() {
+        return SerializationUtil.fromEncryptedBytes(encryptedAccount, "benchmark");
+    }
+
+    @Benchmark
+    public byte[] encryptPayload() {
+        return SerializationUtil.toEncryptedBytes(payload);
+    }
+
+    @Benchmark
+    public Object decryptPayload() {
+        return SerializationUtil.fromEncryptedBytes(encryptedPayload, "benchmark");
+    }
+
+    @Benchmark
+    public void serializeAccountToFile() {
+        SerializationUtil.serializeObject(account, directory, fileName);
+    }
+
+    @Benchmark
+    public Object deserializeAccountFromFile() {
+        return SerializationUtil.deserializeObject(
+                directory, fileName + SerializationUtil.fileExtension);
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.pragwl.benchmark;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.utility.HashUtility;
+import io.github.pragwl.utility.IndexedSortedSet;
+import io.github.pragwl.utility.Utility;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the helpers on the account selection and save paths: {@link HashUtility#hash(String)},
+ * the record file name and its binary key derived with it, and {@link Utility#getValueAtIndex(Set,
+ * int)} on an {@link IndexedSortedSet} and on a {@link TreeSet}, which is walked, for sets of the
+ * given size. The element at the middle of the set is selected.
+ *
+ * <p>Run with {@code gradle jmh -PjmhIncludes=UtilityBenchmark}, and add {@code
+ * -PjmhProfilers=gc} to see that the binary key allocates nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UtilityBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int setSize;
+
+    private String input;
+    private Account account;
+    private byte[] key;
+    private Set<String> indexedSet;
+    private Set<String> treeSet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        input = "github" + "someone@example.com" + 1;
+        account = Account.newAccount("github", "someone@example.com", "correct horse battery");
+        key = new byte[HashUtility.HASH_LENGTH];
+        indexedSet = new IndexedSortedSet<>(Comparator.naturalOrder());
+        treeSet = new TreeSet<>();
+        for (int i = 0; i < setSize; i++) {
+            String element = String.format("service-%06d", i);
+            indexedSet.add(element);
+            treeSet.add(element);
+        }
+    }
+
+    @Benchmark
+    public String hash() {
+        return HashUtility.hash(input);
+    }
+
+    @Benchmark
+    public String fileNameForAccount() {
+        return Utility.getFileNameForAccountObject(account);
+    }
+
+    @Benchmark
+    public byte[] fileKeyForAccount() {
+        Utility.getFileKeyForAccountObject(account, key, 0);
+        return key;
+    }
+
+    @Benchmark
+    public String valueAtIndexIndexedSet() {
+        return Utility.getValueAtIndex(indexedSet, setSize / 2);
+    }
+
+    @Benchmark
+    public String valueAtIndexTreeSet() {
+        return Utility.getValueAtIndex(treeSet, setSize / 2);
+    }
+}
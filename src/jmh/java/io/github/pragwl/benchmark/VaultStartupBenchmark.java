@@ -0,0 +1,72 @@
+package io.github.pragwl.benchmark;
+
+import io.github.pragwl.manager.AccountHistoryManager;
+import io.github.pragwl.manager.ActiveAccountsManager;
+import io.github.pragwl.manager.ArchivedAccountManager;
+import io.github.pragwl.store.VaultStore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures cold starts against generated fixture vaults of different sizes. The store and the
+ * managers are singletons, so every measurement runs once in a fresh JVM: {@link #openStore()}
+ * covers opening the log and rebuilding the offset index, and {@link #startManagers(Blackhole,
+ * Loader)} everything the application does before showing the menu, including decrypting every
+ * active account with the given number of loader threads.
+ *
+ * <p>The fixture vaults are generated on first use, see {@link BenchmarkFixture}. Run with {@code
+ * gradle jmh -PjmhIncludes=VaultStartupBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class VaultStartupBenchmark {
+
+    @Param({"10", "1000", "10000", "100000"})
+    private int records;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkFixture.useVault(records);
+    }
+
+    @Benchmark
+    public VaultStore openStore() {
+        return VaultStore.getInstance();
+    }
+
+    @Benchmark
+    public void startManagers(Blackhole blackhole, Loader loader) {
+        blackhole.consume(ActiveAccountsManager.getInstance());
+        blackhole.consume(ArchivedAccountManager.getInstance());
+        blackhole.consume(AccountHistoryManager.getInstance());
+    }
+
+    /** The number of threads decrypting accounts, read once when the loader is first used. */
+    @State(Scope.Benchmark)
+    public static class Loader {
+
+        @Param({"1", "4"})
+        private int loaderThreads;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            System.setProperty("credvault.loader.threads", Integer.toString(loaderThreads));
+        }
+    }
+}
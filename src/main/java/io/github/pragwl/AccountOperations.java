@@ -0,0 +1,113 @@
+package io.github.pragwl;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.manager.AccountHistoryManager;
+import io.github.pragwl.manager.AccountManager;
+import io.github.pragwl.manager.ActiveAccountsManager;
+import io.github.pragwl.manager.ArchivedAccountManager;
+import io.github.pragwl.store.VaultStore;
+import io.github.pragwl.store.WriteBehindQueue;
+import io.github.pragwl.utility.Utility;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Account changes shared by the interactive menu and batch mode. Every change, including its
+ * version history, is submitted to the {@link WriteBehindQueue} as one batch and then applied to
+ * the managers.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class AccountOperations {
+
+    /**
+     * Creates and stores a new active account.
+     *
+     * @param name The account name.
+     * @param id The account id.
+     * @param password The password.
+     * @return The new account.
+     * @throws IllegalArgumentException if the name, id or password is blank.
+     */
+    static Account add(String name, String id, String password) {
+        ActiveAccountsManager activeAccManager = ActiveAccountsManager.getInstance();
+        Account account = activeAccManager.createAccount(name, id, password);
+        String key = Utility.getFileNameForAccountObject(account);
+        WriteBehindQueue.Batch batch = WriteBehindQueue.getInstance().begin();
+        batch.put(VaultStore.Section.ACTIVE, key, account);
+        AccountHistoryManager.getInstance().recordAdded(account, batch);
+        batch.submit();
+        activeAccManager.addAccount(account);
+        log.info("Account added successfully: {}", account.getId());
+        return account;
+    }
+
+    /**
+     * Archives the original account and stores its new version in a single batch, so a crash
+     * leaves either the original or the updated state, never a mix of both.
+     *
+     * @param original The active account.
+     * @param updated The edited copy of the account, stored as its next version.
+     */
+    static void update(Account original, Account updated) {
+        original.setUpdateOn(LocalDateTime.now());
+        updated.incrementVersion();
+
+        WriteBehindQueue.Batch batch = WriteBehindQueue.getInstance().begin();
+        String key = Utility.getFileNameForAccountObject(updated);
+        batch.put(VaultStore.Section.ACTIVE, key, updated);
+
+        String archivedKey = Utility.getFileNameForAccountObject(original);
+        batch.put(VaultStore.Section.ARCHIVED, archivedKey, original);
+
+        batch.delete(VaultStore.Section.ACTIVE, archivedKey);
+        AccountHistoryManager.getInstance().recordUpdated(original, updated, batch);
+        batch.submit();
+
+        ActiveAccountsManager activeAccManager = ActiveAccountsManager.getInstance();
+        activeAccManager.deleteAccount(original);
+        activeAccManager.addAccount(updated);
+        ArchivedAccountManager.getInstance().addAccount(original);
+        AccountManager.forgetDecryptedPassword(original);
+    }
+
+    /**
+     * Deletes an active account. Its archived versions are kept.
+     *
+     * @param account The active account.
+     */
+    static void delete(Account account) {
+        String key = Utility.getFileNameForAccountObject(account);
+        WriteBehindQueue.Batch batch = WriteBehindQueue.getInstance().begin();
+        batch.delete(VaultStore.Section.ACTIVE, key);
+        AccountHistoryManager.getInstance().recordDeleted(account, batch);
+        batch.submit();
+        ActiveAccountsManager.getInstance().deleteAccount(account);
+        AccountManager.forgetDecryptedPassword(account);
+        log.info("Account deleted successfully: {}", account.getId());
+    }
+
+    /**
+     * Finds the active account with the given name and id, ignoring case.
+     *
+     * @param name The account name.
+     * @param id The account id.
+     * @return The account.
+     * @throws IllegalArgumentException if no active account matches.
+     */
+    static Account find(String name, String id) {
+        List<Account> matches =
+                ActiveAccountsManager.getInstance().findByName(name).stream()
+                        .filter(account -> account.getId().equalsIgnoreCase(id))
+                        .toList();
+        if (matches.isEmpty()) {
+            throw new IllegalArgumentException("No active account " + name + " / " + id);
+        }
+        // Several matches are versions created at different times; the latest one wins
+        return matches.get(matches.size() - 1);
+    }
+}
@@ -3,29 +3,121 @@ package io.github.pragwl;
 import static java.lang.System.out;
 
 import io.github.pragwl.domain.Account;
+import io.github.pragwl.manager.AccountHistoryManager;
+import io.github.pragwl.manager.AccountImport;
 import io.github.pragwl.manager.AccountManager;
 import io.github.pragwl.manager.ActiveAccountsManager;
 import io.github.pragwl.manager.ArchivedAccountManager;
+import io.github.pragwl.store.KeyRotation;
+import io.github.pragwl.store.VaultBackup;
+import io.github.pragwl.store.WriteBehindQueue;
 import io.github.pragwl.utility.*;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.InputMismatchException;
+import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Main application class for CredManager.
+ *
+ * <p>Without arguments the interactive menu is started. {@code rotate-key [new key file]}
+ * re-encrypts the vault with a new key, generated unless a key file is given, and exits. {@code
+ * import <file> [csv|json]} adds every account of a file and exits; the format defaults to the file
+ * extension. {@code export <archive>} backs the vault up into an encrypted archive, {@code backup
+ * <directory>} adds an incremental snapshot to a backup directory, and {@code restore <archive or
+ * directory>} restores an archive or every snapshot of a backup directory into the vault.
+ *
+ * <p>{@code batch [script]} runs the commands of a script, or of standard input, against the vault
+ * loaded once, see {@link BatchMode}. {@code daemon} keeps the vault loaded and serves the same
+ * commands over a Unix domain socket until it is idle, see {@link VaultDaemon}, and {@code client
+ * [command]} sends a command, or standard input, to it.
+ *
+ * <p>With {@code -Dcredvault.metrics=true} the menu can also show the collected {@link Metrics},
+ * which are written on exit as well.
  */
 @Slf4j
 public class Application {
 
     private static final Scanner SCANNER = new Scanner(System.in);
-    private static final ActiveAccountsManager activeAccManager = ActiveAccountsManager.getInstance();
-    private static final ArchivedAccountManager archiveAccManager =
-            ArchivedAccountManager.getInstance();
+    private static final Metrics.Timer STARTUP_TIME =
+            Metrics.timer(
+                    "credvault_startup_seconds", "Time from launch until the menu is shown.");
+    private static ActiveAccountsManager activeAccManager;
+    private static ArchivedAccountManager archiveAccManager;
+    private static AccountHistoryManager historyManager;
 
     public static void main(String[] args) {
+        int status;
+        try {
+            status = run(args);
+        } finally {
+            // Pending changes are saved by now, so the master key is no longer needed
+            MasterKey.destroyAll();
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    private static int run(String[] args) {
+        long start = Metrics.start();
+        if (args.length > 0 && args[0].equals("rotate-key")) {
+            rotateKey(args.length > 1 ? args[1] : null);
+            return 0;
+        }
+        if (args.length > 0 && args[0].equals("client")) {
+            // The client never opens the vault, so it starts without loading it
+            return DaemonClient.send(Arrays.asList(args).subList(1, args.length)) ? 0 : 1;
+        }
+        if (KeyRotation.isInProgress()) {
+            // On stderr, so it never mixes with the JSON results of batch mode
+            System.err.println(
+                    "A key rotation is unfinished. Run rotate-key again to complete it.");
+            log.error("Refusing to open the vault while a key rotation is unfinished");
+            return 1;
+        }
+        if (args.length > 0 && args[0].equals("batch")) {
+            boolean succeeded = BatchMode.run(args.length > 1 ? args[1] : "-");
+            // Every command already reported success, so a failed save must fail the process
+            boolean saved = flushPendingChanges(System.err);
+            // Tell the calling script whether any command failed
+            return succeeded && saved ? 0 : 1;
+        }
+        if (args.length > 0 && args[0].equals("daemon")) {
+            runDaemon();
+            return 0;
+        }
+        if (args.length > 1 && args[0].equals("import")) {
+            importAccounts(args[1], args.length > 2 ? args[2] : null);
+            return 0;
+        }
+        if (args.length > 1 && args[0].equals("export")) {
+            exportVault(args[1]);
+            return 0;
+        }
+        if (args.length > 1 && args[0].equals("backup")) {
+            backupVault(args[1]);
+            return 0;
+        }
+        if (args.length > 1 && args[0].equals("restore")) {
+            restoreVault(args[1]);
+            return 0;
+        }
+
+        activeAccManager = ActiveAccountsManager.getInstance();
+        archiveAccManager = ArchivedAccountManager.getInstance();
+        historyManager = AccountHistoryManager.getInstance();
+        STARTUP_TIME.stop(start);
         boolean exit = false;
         do {
             printMenu();
@@ -47,7 +139,113 @@ public class Application {
             }
         } while (!exit);
         SCANNER.close();
+        flushPendingChanges(out);
         log.info("Exiting CredManager Application");
+        return 0;
+    }
+
+    /**
+     * Saves the changes still queued for writing.
+     *
+     * @param messages Where to report a failure to the user.
+     * @return `true` if everything was saved.
+     */
+    private static boolean flushPendingChanges(PrintStream messages) {
+        try {
+            WriteBehindQueue.getInstance().close();
+            return true;
+        } catch (RuntimeException e) {
+            messages.println("Failed to save pending changes: " + e.getMessage());
+            log.error("Failed to save pending changes: ", e);
+            return false;
+        }
+    }
+
+    private static void runDaemon() {
+        try {
+            VaultDaemon.serve();
+        } catch (IOException | RuntimeException e) {
+            out.println("Vault daemon failed: " + e.getMessage());
+            log.error("Vault daemon failed: ", e);
+        }
+        flushPendingChanges(out);
+    }
+
+    private static void rotateKey(String newKeyFile) {
+        try {
+            KeyRotation.rotate(newKeyFile);
+            out.println("Vault encryption key rotated.");
+        } catch (IOException | RuntimeException e) {
+            out.println("Key rotation failed: " + e.getMessage());
+            out.println("Run rotate-key again to resume it.");
+            log.error("Key rotation failed: ", e);
+        }
+    }
+
+    private static void importAccounts(String file, String format) {
+        Path path = Paths.get(file);
+        try {
+            AccountImport.Result result =
+                    AccountImport.importFile(
+                            path,
+                            format != null
+                                    ? AccountImport.Format.valueOf(format.toUpperCase(Locale.ROOT))
+                                    : AccountImport.Format.of(path));
+            out.printf(
+                    "Imported %d accounts in %d ms (%d rejected, %d skipped).%n",
+                    result.getImported(),
+                    result.getElapsedMillis(),
+                    result.getRejected(),
+                    result.getSkipped());
+        } catch (IOException | RuntimeException e) {
+            out.println("Import failed, no accounts were added: " + e.getMessage());
+            log.error("Import failed: ", e);
+        }
+    }
+
+    private static void exportVault(String archive) {
+        try {
+            VaultBackup.Result result = VaultBackup.export(Paths.get(archive));
+            out.printf(
+                    "Exported %d records (%d bytes) in %d ms, %d bytes/s.%n",
+                    result.getRecords(),
+                    result.getArchiveBytes(),
+                    result.getElapsedMillis(),
+                    result.getBytesPerSecond());
+        } catch (IOException | RuntimeException e) {
+            out.println("Export failed: " + e.getMessage());
+            log.error("Export failed: ", e);
+        }
+    }
+
+    private static void backupVault(String directory) {
+        try {
+            VaultBackup.Result result = VaultBackup.backup(Paths.get(directory));
+            out.printf(
+                    "Backed up %d changed records (%d bytes) in %d ms, %d bytes/s.%n",
+                    result.getRecords(),
+                    result.getArchiveBytes(),
+                    result.getElapsedMillis(),
+                    result.getBytesPerSecond());
+        } catch (IOException | RuntimeException e) {
+            out.println("Backup failed: " + e.getMessage());
+            log.error("Backup failed: ", e);
+        }
+    }
+
+    private static void restoreVault(String source) {
+        try {
+            VaultBackup.Result result = VaultBackup.restore(Paths.get(source));
+            out.printf(
+                    "Restored %d records (%d bytes) in %d ms, %d bytes/s.%n",
+                    result.getRecords(),
+                    result.getArchiveBytes(),
+                    result.getElapsedMillis(),
+                    result.getBytesPerSecond());
+        } catch (IOException | RuntimeException e) {
+            out.println("Restore failed, the vault is unchanged: " + e.getMessage());
+            log.error("Restore failed: ", e);
+        }
     }
 
     private static void printMenu() {
@@ -59,7 +257,11 @@ public class Application {
         out.println("5. View Archived Accounts");
         out.println("6. Copy active account on clipboard");
         out.println("7. Copy archived account on clipboard");
-        out.println("8. Exit");
+        out.println("8. View Account History");
+        out.println("9. Exit");
+        if (Metrics.isEnabled()) {
+            out.println("10. View Metrics");
+        }
     }
 
     private static boolean processChoice(int choice) {
@@ -86,13 +288,31 @@ public class Application {
                 copyClipboard(archiveAccManager);
                 break;
             case 8:
+                viewAccountHistory();
+                break;
+            case 9:
                 return true; // Exit
+            case 10:
+                if (!Metrics.isEnabled()) {
+                    throw new IllegalArgumentException("Invalid menu option: " + choice);
+                }
+                viewMetrics();
+                break;
             default:
                 throw new IllegalArgumentException("Invalid menu option: " + choice);
         }
         return false;
     }
 
+    private static void viewMetrics() {
+        try {
+            Metrics.write(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            out.println("Failed to show metrics: " + e.getMessage());
+            log.error("Failed to show metrics: ", e);
+        }
+    }
+
     private static void addAccount() {
         out.println("Account Name: ");
         String accountName = SCANNER.nextLine();
@@ -102,12 +322,7 @@ public class Application {
         String accountPassword = SCANNER.nextLine();
 
         try {
-            Account account = activeAccManager.createAccount(accountName, accountId, accountPassword);
-            String fileName = Utility.getFileNameForAccountObject(account);
-            SerializationUtil.serializeObject(
-                    account, ActiveAccountsManager.AccountConfig.activeAccountDirectory, fileName);
-            activeAccManager.addAccount(account);
-            log.info("Account added successfully: {}", account.getId());
+            AccountOperations.add(accountName, accountId, accountPassword);
         } catch (Exception e) {
             out.println("Error adding account: " + e.getMessage());
             log.error("Error adding account: ", e);
@@ -149,7 +364,7 @@ public class Application {
                 default:
                     throw new IllegalArgumentException("Invalid update option: " + updateChoice);
             }
-            updateAccountObjects(originalAccountObj, newAccountObj);
+            AccountOperations.update(originalAccountObj, newAccountObj);
 
         } catch (InputMismatchException e) {
             out.println("Invalid input. Enter account/update choice as a number.");
@@ -164,29 +379,6 @@ public class Application {
         }
     }
 
-    private static void updateAccountObjects(Account originalAccountObj, Account newAccountObj) {
-        originalAccountObj.setUpdateOn(LocalDateTime.now());
-        newAccountObj.incrementVersion();
-        activeAccManager.deleteAccount(originalAccountObj);
-        activeAccManager.addAccount(newAccountObj);
-        archiveAccManager.addAccount(originalAccountObj);
-
-        String fileName = Utility.getFileNameForAccountObject(newAccountObj);
-        SerializationUtil.serializeObject(
-                newAccountObj, ActiveAccountsManager.AccountConfig.activeAccountDirectory, fileName);
-
-        String archivedFileName = Utility.getFileNameForAccountObject(originalAccountObj);
-        SerializationUtil.serializeObject(
-                originalAccountObj,
-                ArchivedAccountManager.AccountConfig.archiveAccountDirectory,
-                archivedFileName);
-
-        FileUtility.deleteFile(
-                ActiveAccountsManager.AccountConfig.activeAccountDirectory
-                        + Utility.getFileNameForAccountObject(originalAccountObj)
-                        + SerializationUtil.fileExtension);
-    }
-
     private static void deleteAccount() {
         activeAccManager.viewAccounts();
         out.print("Choice: ");
@@ -202,13 +394,43 @@ public class Application {
                 return;
             }
 
-            String fileName = Utility.getFileNameForAccountObject(originalAccountObj);
-            activeAccManager.deleteAccount(originalAccountObj);
-            FileUtility.deleteFile(
-                    ActiveAccountsManager.AccountConfig.activeAccountDirectory
-                            + fileName
-                            + SerializationUtil.fileExtension);
-            log.info("Account deleted successfully: {}", originalAccountObj.getId());
+            AccountOperations.delete(originalAccountObj);
+
+        } catch (InputMismatchException e) {
+            out.println("Invalid input. Enter a number.");
+            SCANNER.nextLine(); // Consume invalid input
+            log.warn("Invalid input: Not a number", e);
+        } catch (Exception e) {
+            out.println("An unexpected error occurred: " + e.getMessage());
+            log.error("An unexpected error occurred: ", e);
+        }
+    }
+
+    private static void viewAccountHistory() {
+        if (!activeAccManager.hasAccounts()) {
+            ConsolePrinter.printWarningMessage("No accounts found.");
+            return;
+        }
+        activeAccManager.viewAccounts();
+        out.print("Choice: ");
+        try {
+            int accSelection = SCANNER.nextInt();
+            SCANNER.nextLine(); // Consume newline
+
+            Account account = activeAccManager.getAccountByIdx(accSelection - 1);
+
+            if (account == null) {
+                ConsolePrinter.printWarningMessage("Invalid Choice");
+                log.warn("Invalid account selection: {}", accSelection);
+                return;
+            }
+
+            List<Account> versions = historyManager.versionsOf(account);
+            if (versions.isEmpty()) {
+                ConsolePrinter.printWarningMessage("No history found.");
+                return;
+            }
+            ConsolePrinter.printTable(versions, List.of("serialVersionUID"));
 
         } catch (InputMismatchException e) {
             out.println("Invalid input. Enter a number.");
@@ -252,7 +474,8 @@ public class Application {
                     log.info("Account ID copied to clipboard for account: {}", account.getId());
                     break;
                 case 2:
-                    ClipboardUtility.copyToClipboard(account.getPassword().getDecryptedPassword());
+                    // The AWT clipboard only takes a String, so this plaintext cannot be wiped
+                    ClipboardUtility.copyToClipboard(accountManager.getDecryptedPassword(account));
                     log.info("Password copied to clipboard.");
                     break;
                 default:
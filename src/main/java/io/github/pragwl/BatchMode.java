@@ -0,0 +1,360 @@
+package io.github.pragwl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.manager.AccountHistoryManager;
+import io.github.pragwl.manager.ActiveAccountsManager;
+import io.github.pragwl.manager.ArchivedAccountManager;
+import io.github.pragwl.utility.Metrics;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs account commands from a script or standard input against the vault, loaded once for all of
+ * them. Every command is a line of whitespace-separated arguments; arguments holding spaces are
+ * enclosed in double quotes, in which {@code \"} and {@code \\} are escapes. Blank lines and lines
+ * starting with {@code #} are skipped. Accounts are selected by name and id, ignoring case.
+ *
+ * <pre>
+ * add &lt;name&gt; &lt;id&gt; &lt;password&gt;
+ * get &lt;name&gt; [id]                          includes the passwords
+ * update &lt;name&gt; &lt;id&gt; id|password &lt;value&gt;
+ * delete &lt;name&gt; &lt;id&gt;
+ * list [name prefix]
+ * history &lt;name&gt; &lt;id&gt;
+ * </pre>
+ *
+ * <p>Standard output receives one JSON object per command, in order, as soon as the command is
+ * done: its line number, command and {@code "ok"}, plus the affected accounts, or {@code "error"}
+ * if it failed. A failed command does not stop the script. A final {@code "summary"} object counts
+ * the commands and failures. Changes go through the write-behind queue, so a script of many
+ * changes is stored in a few transactions.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class BatchMode {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Metrics.Timer COMMAND_TIME =
+            Metrics.timer("credvault_batch_command_seconds", "Time spent running a batch command.");
+    private static final Object COMMAND_LOCK = new Object();
+
+    /**
+     * Runs every command of a script.
+     *
+     * @param script The script file, or {@code -} for standard input.
+     * @return `true` if every command succeeded.
+     */
+    static boolean run(String script) {
+        try (BufferedReader reader = open(script)) {
+            // Load the vault before the first command, so its cost is paid once and up front
+            ActiveAccountsManager.getInstance();
+            ArchivedAccountManager.getInstance();
+            AccountHistoryManager.getInstance();
+            return run(reader, new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.error("Batch failed: ", e);
+            System.err.println("Batch failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Runs every command read from a reader and writes the results, followed by the summary.
+     * Commands run one at a time, even when several readers are served at once, since the managers
+     * are not thread-safe.
+     *
+     * @param reader The commands, one per line.
+     * @param writer The destination of the results. It is flushed after every command.
+     * @return `true` if every command succeeded.
+     * @throws IOException if reading a command or writing a result fails.
+     */
+    static boolean run(BufferedReader reader, Writer writer) throws IOException {
+        return run(reader, writer, () -> {});
+    }
+
+    /**
+     * Runs every command read from a reader like {@link #run(BufferedReader, Writer)}, calling back
+     * once each command has been answered.
+     *
+     * @param reader The commands, one per line.
+     * @param writer The destination of the results. It is flushed after every command.
+     * @param commandServed Called after the result of every command is written.
+     * @return `true` if every command succeeded.
+     * @throws IOException if reading a command or writing a result fails.
+     */
+    static boolean run(BufferedReader reader, Writer writer, Runnable commandServed)
+            throws IOException {
+        long start = System.nanoTime();
+        int commands = 0;
+        int failed = 0;
+        try (JsonGenerator json =
+                JSON_FACTORY
+                        .createGenerator(writer)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                        .setRootValueSeparator(null)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                List<String> arguments;
+                try {
+                    arguments = tokenize(line);
+                } catch (IllegalArgumentException e) {
+                    writeError(json, lineNumber, "", e.getMessage());
+                    endLine(json, writer);
+                    commandServed.run();
+                    failed++;
+                    commands++;
+                    continue;
+                }
+                if (arguments.isEmpty() || arguments.get(0).startsWith("#")) {
+                    continue;
+                }
+                commands++;
+                boolean succeeded;
+                synchronized (COMMAND_LOCK) {
+                    succeeded = execute(json, lineNumber, arguments);
+                }
+                if (!succeeded) {
+                    failed++;
+                }
+                endLine(json, writer);
+                commandServed.run();
+            }
+
+            json.writeStartObject();
+            json.writeStringField("command", "summary");
+            json.writeNumberField("commands", commands);
+            json.writeNumberField("failed", failed);
+            json.writeNumberField("elapsedMillis", (System.nanoTime() - start) / 1_000_000);
+            json.writeEndObject();
+            endLine(json, writer);
+        }
+        log.info(
+                "Ran {} batch commands in {} ms, {} failed",
+                commands,
+                (System.nanoTime() - start) / 1_000_000,
+                failed);
+        return failed == 0;
+    }
+
+    /** Ends a line of output and flushes it, so a reading script gets each result right away. */
+    private static void endLine(JsonGenerator json, Writer writer) throws IOException {
+        json.flush();
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private static BufferedReader open(String script) throws IOException {
+        Reader reader =
+                script.equals("-")
+                        ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                        : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8);
+        return new BufferedReader(reader);
+    }
+
+    /** Runs a command and writes its result. Returns whether it succeeded. */
+    private static boolean execute(JsonGenerator json, int lineNumber, List<String> arguments)
+            throws IOException {
+        String command = arguments.get(0).toLowerCase(Locale.ROOT);
+        List<Account> accounts;
+        boolean withPasswords = false;
+        long start = Metrics.start();
+        try {
+            switch (command) {
+                case "add":
+                    expectArguments(arguments, 4, 4, "add <name> <id> <password>");
+                    accounts =
+                            List.of(
+                                    AccountOperations.add(
+                                            arguments.get(1), arguments.get(2), arguments.get(3)));
+                    break;
+                case "get":
+                    expectArguments(arguments, 2, 3, "get <name> [id]");
+                    if (arguments.size() == 3) {
+                        accounts =
+                                List.of(AccountOperations.find(arguments.get(1), arguments.get(2)));
+                    } else {
+                        accounts = ActiveAccountsManager.getInstance().findByName(arguments.get(1));
+                    }
+                    withPasswords = true;
+                    break;
+                case "update":
+                    expectArguments(arguments, 5, 5, "update <name> <id> id|password <value>");
+                    accounts = List.of(update(arguments));
+                    break;
+                case "delete":
+                    expectArguments(arguments, 3, 3, "delete <name> <id>");
+                    Account deleted = AccountOperations.find(arguments.get(1), arguments.get(2));
+                    AccountOperations.delete(deleted);
+                    accounts = List.of(deleted);
+                    break;
+                case "list":
+                    expectArguments(arguments, 1, 2, "list [name prefix]");
+                    accounts = list(arguments.size() == 2 ? arguments.get(1) : null);
+                    break;
+                case "history":
+                    expectArguments(arguments, 3, 3, "history <name> <id>");
+                    accounts =
+                            AccountHistoryManager.getInstance()
+                                    .versionsOf(
+                                            AccountOperations.find(
+                                                    arguments.get(1), arguments.get(2)));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + command);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Batch command on line {} failed: {}", lineNumber, e.getMessage());
+            writeError(json, lineNumber, command, e.getMessage());
+            return false;
+        } finally {
+            COMMAND_TIME.stop(start);
+        }
+
+        json.writeStartObject();
+        json.writeNumberField("line", lineNumber);
+        json.writeStringField("command", command);
+        json.writeBooleanField("ok", true);
+        json.writeArrayFieldStart("accounts");
+        for (Account account : accounts) {
+            writeAccount(json, account, withPasswords);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        return true;
+    }
+
+    private static Account update(List<String> arguments) {
+        Account original = AccountOperations.find(arguments.get(1), arguments.get(2));
+        ActiveAccountsManager activeAccManager = ActiveAccountsManager.getInstance();
+        Account updated;
+        switch (arguments.get(3).toLowerCase(Locale.ROOT)) {
+            case "id":
+                updated = activeAccManager.editAccountId(original, arguments.get(4));
+                break;
+            case "password":
+                updated = activeAccManager.editAccountPassword(original, arguments.get(4));
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Can only update the id or the password, not " + arguments.get(3));
+        }
+        AccountOperations.update(original, updated);
+        return updated;
+    }
+
+    private static List<Account> list(String prefix) {
+        ActiveAccountsManager activeAccManager = ActiveAccountsManager.getInstance();
+        if (prefix != null) {
+            return activeAccManager.findByNamePrefix(prefix);
+        }
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; activeAccManager.getAccountByIdx(i) != null; i++) {
+            accounts.add(activeAccManager.getAccountByIdx(i));
+        }
+        return accounts;
+    }
+
+    private static void expectArguments(List<String> arguments, int min, int max, String usage) {
+        if (arguments.size() < min || arguments.size() > max) {
+            throw new IllegalArgumentException("Usage: " + usage);
+        }
+    }
+
+    private static void writeAccount(JsonGenerator json, Account account, boolean withPassword)
+            throws IOException {
+        json.writeStartObject();
+        json.writeStringField("name", account.getName());
+        json.writeStringField("id", account.getId());
+        if (account.getVersion() != null) {
+            json.writeNumberField("version", account.getVersion());
+        }
+        json.writeStringField("createdOn", String.valueOf(account.getCreatedOn()));
+        if (account.getUpdateOn() != null) {
+            json.writeStringField("updatedOn", account.getUpdateOn().toString());
+        }
+        if (withPassword) {
+            char[] password =
+                    ActiveAccountsManager.getInstance().getDecryptedPasswordChars(account);
+            try {
+                json.writeFieldName("password");
+                json.writeString(password, 0, password.length);
+            } finally {
+                Arrays.fill(password, '\0');
+            }
+        }
+        json.writeEndObject();
+    }
+
+    private static void writeError(
+            JsonGenerator json, int lineNumber, String command, String message)
+            throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("line", lineNumber);
+        json.writeStringField("command", command);
+        json.writeBooleanField("ok", false);
+        json.writeStringField("error", message);
+        json.writeEndObject();
+    }
+
+    /**
+     * Splits a line into arguments at whitespace, keeping double-quoted arguments together.
+     *
+     * @throws IllegalArgumentException if a quote is not closed.
+     */
+    static List<String> tokenize(String line) {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder argument = new StringBuilder();
+        boolean quoted = false;
+        boolean inArgument = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < line.length()) {
+                    argument.append(line.charAt(++i));
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    argument.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+                inArgument = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                argument.append(c);
+                inArgument = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        if (inArgument) {
+            arguments.add(argument.toString());
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.pragwl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Thin client of the {@link VaultDaemon}. It sends a single command given as arguments, or every
+ * line of standard input, and copies the JSON lines of the results to standard output. It never
+ * opens the vault itself.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class DaemonClient {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Sends commands to the daemon and prints the results.
+     *
+     * @param command The arguments of a single command, or none to send standard input.
+     * @return `true` if every command succeeded.
+     */
+    static boolean send(List<String> command) {
+        Path socket = VaultDaemon.socketPath();
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            System.err.println("No vault daemon listens on " + socket + ": " + e.getMessage());
+            return false;
+        }
+
+        Thread sender =
+                new Thread(
+                        () -> sendCommands(channel, command.isEmpty() ? null : quote(command)),
+                        "vault-daemon-client");
+        sender.setDaemon(true);
+        sender.start();
+
+        PrintStream out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+        int failed = -1;
+        try (channel;
+                BufferedReader reader =
+                        new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                out.println(line);
+                int summaryFailures = summaryFailures(line);
+                if (summaryFailures >= 0) {
+                    failed = summaryFailures;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Lost the connection to the vault daemon: " + e.getMessage());
+            log.error("Lost the connection to the vault daemon: ", e);
+            return false;
+        }
+        // Without a summary the daemon stopped before finishing the commands
+        return failed == 0;
+    }
+
+    /**
+     * Writes the command, or standard input if there is none, and shuts down the output so the
+     * daemon sends the summary. Runs alongside the reader, so neither side blocks on a full socket
+     * buffer.
+     */
+    private static void sendCommands(SocketChannel channel, String command) {
+        try {
+            // Not Channels.newOutputStream, which would wait for the lock the reading side holds
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            if (command != null) {
+                writer.write(command);
+                writer.write('\n');
+            } else {
+                BufferedReader input =
+                        new BufferedReader(
+                                new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = input.readLine()) != null) {
+                    writer.write(line);
+                    writer.write('\n');
+                    // The daemon answers every command as soon as it arrives
+                    writer.flush();
+                }
+            }
+            writer.flush();
+            channel.shutdownOutput();
+        } catch (IOException e) {
+            log.warn("Failed to send commands to the vault daemon: {}", e.getMessage());
+        }
+    }
+
+    /** Joins arguments into a command line, quoting each as {@link BatchMode#tokenize} expects. */
+    static String quote(List<String> arguments) {
+        StringBuilder line = new StringBuilder();
+        for (String argument : arguments) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            line.append('"');
+            for (int i = 0; i < argument.length(); i++) {
+                char c = argument.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\');
+                }
+                line.append(c);
+            }
+            line.append('"');
+        }
+        return line.toString();
+    }
+
+    /** Returns the failure count of a summary line, or -1 for the result of a command. */
+    private static int summaryFailures(String line) throws IOException {
+        boolean summary = false;
+        int failed = -1;
+        try (JsonParser parser = JSON_FACTORY.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return -1;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("command") && value == JsonToken.VALUE_STRING) {
+                    summary = parser.getText().equals("summary");
+                } else if (field.equals("failed") && value == JsonToken.VALUE_NUMBER_INT) {
+                    failed = parser.getIntValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return summary ? failed : -1;
+    }
+}
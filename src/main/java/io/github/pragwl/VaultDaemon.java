@@ -0,0 +1,314 @@
+package io.github.pragwl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.pragwl.manager.AccountHistoryManager;
+import io.github.pragwl.manager.ActiveAccountsManager;
+import io.github.pragwl.manager.ArchivedAccountManager;
+import io.github.pragwl.store.VaultStore;
+import io.github.pragwl.utility.CryptoPool;
+import io.github.pragwl.utility.DerivedKeyCache;
+import io.github.pragwl.utility.PasswordCache;
+import jdk.net.ExtendedSocketOptions;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Long-running process that loads the vault once and serves batch commands over a Unix domain
+ * socket, so scripts looking up accounts do not pay for loading the vault on every call.
+ *
+ * <p>Every connection is handled like a batch script, see {@link BatchMode}: the client writes
+ * command lines, and receives one JSON line per command as soon as it is done, followed by the
+ * summary once it shuts down its output. Connections are served on their own threads, while the
+ * commands themselves run one at a time.
+ *
+ * <p>The socket is {@code credvault.daemon.socket}, by default {@code daemon/daemon.sock} in the
+ * vault directory. It is bound inside a directory that only its owner can access, created if
+ * needed, and the daemon refuses to start if that directory or the socket cannot be restricted to
+ * the owner. Connections from any other user are closed without being served.
+ *
+ * <p>Once no command has been served for {@code credvault.daemon.idle.timeout} seconds (default
+ * 900, 0 to never lock), whether or not clients are still connected, the daemon locks: it closes
+ * every connection, waits for the command in progress, wipes the cached keys and passwords, drops
+ * the pooled crypto engines, and returns so the application can save pending changes and exit.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class VaultDaemon {
+
+    private static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 900;
+    private static final long COMMAND_GRACE_SECONDS = 30;
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY =
+            PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_SOCKET =
+            PosixFilePermissions.fromString("rw-------");
+
+    /**
+     * Retrieves the socket the daemon listens on.
+     *
+     * @return The socket path.
+     */
+    static Path socketPath() {
+        String path = System.getProperty("credvault.daemon.socket");
+        return path != null
+                ? Paths.get(path)
+                : Paths.get(VaultStore.StoreConfig.vaultDirectory, "daemon", "daemon.sock");
+    }
+
+    /**
+     * Serves commands until the idle timeout expires or the process is stopped.
+     *
+     * @throws IOException if the socket cannot be opened or restricted to its owner, or another
+     *     daemon already listens on it.
+     */
+    static void serve() throws IOException {
+        long start = System.nanoTime();
+        ActiveAccountsManager.getInstance();
+        ArchivedAccountManager.getInstance();
+        AccountHistoryManager.getInstance();
+
+        Path socket = socketPath().toAbsolutePath();
+        prepareSocketDirectory(socket.getParent());
+        removeStaleSocket(socket);
+        Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+        // Last time a client connected or a command was served
+        AtomicLong lastActivity = new AtomicLong(System.nanoTime());
+        ExecutorService handlers =
+                Executors.newCachedThreadPool(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "vault-daemon-connection");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        ScheduledExecutorService idleWatch =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "vault-daemon-idle-watch");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        Thread removeSocket = new Thread(() -> deleteQuietly(socket), "vault-daemon-exit");
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(removeSocket);
+            UserPrincipal owner = restrictToOwner(socket);
+
+            long idleTimeoutNanos =
+                    TimeUnit.SECONDS.toNanos(
+                            Long.getLong(
+                                    "credvault.daemon.idle.timeout",
+                                    DEFAULT_IDLE_TIMEOUT_SECONDS));
+            if (idleTimeoutNanos > 0) {
+                idleWatch.scheduleWithFixedDelay(
+                        () -> {
+                            long idle = System.nanoTime() - lastActivity.get();
+                            if (idle >= idleTimeoutNanos) {
+                                log.info(
+                                        "Vault daemon idle for {} s, locking",
+                                        TimeUnit.NANOSECONDS.toSeconds(idle));
+                                closeQuietly(server);
+                            }
+                        },
+                        1,
+                        1,
+                        TimeUnit.SECONDS);
+            }
+            log.info(
+                    "Vault daemon listening on {} after {} ms",
+                    socket,
+                    (System.nanoTime() - start) / 1_000_000);
+
+            while (true) {
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (ClosedChannelException e) {
+                    // Closed by the idle watch
+                    break;
+                }
+                if (!isOwner(channel, owner)) {
+                    closeQuietly(channel);
+                    continue;
+                }
+                lastActivity.set(System.nanoTime());
+                clients.add(channel);
+                handlers.execute(
+                        () -> {
+                            try {
+                                handle(channel, () -> lastActivity.set(System.nanoTime()));
+                            } finally {
+                                clients.remove(channel);
+                            }
+                        });
+            }
+        } finally {
+            idleWatch.shutdownNow();
+            clients.forEach(VaultDaemon::closeQuietly);
+            stopHandlers(handlers);
+            deleteQuietly(socket);
+            try {
+                Runtime.getRuntime().removeShutdownHook(removeSocket);
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                // Already shutting down, or the hook was never added
+            }
+            PasswordCache.getInstance().clear();
+            DerivedKeyCache.getInstance().clear();
+            CryptoPool.clear();
+            log.info("Vault daemon stopped");
+        }
+    }
+
+    private static void handle(SocketChannel channel, Runnable commandServed) {
+        try (channel;
+                BufferedReader reader =
+                        new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+                Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+            BatchMode.run(reader, writer, commandServed);
+        } catch (IOException e) {
+            // Usually a client that went away before reading its results
+            log.warn("Vault daemon connection failed: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Vault daemon connection failed: ", e);
+        }
+    }
+
+    /** Deletes a socket left behind by a daemon that did not stop cleanly. */
+    private static void removeStaleSocket(Path socket) throws IOException {
+        if (!Files.exists(socket)) {
+            return;
+        }
+        boolean listening;
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            listening = true;
+        } catch (IOException e) {
+            listening = false;
+        }
+        if (listening) {
+            throw new IOException("A vault daemon already listens on " + socket);
+        }
+        log.info("Removing stale daemon socket {}", socket);
+        Files.delete(socket);
+    }
+
+    /**
+     * Creates the directory holding the socket with access for its owner only, or checks that an
+     * existing one grants no access to anyone else, so the socket is never reachable by other
+     * users, not even before its own permissions are set.
+     */
+    private static void prepareSocketDirectory(Path directory) throws IOException {
+        try {
+            if (Files.notExists(directory, LinkOption.NOFOLLOW_LINKS)) {
+                Files.createDirectories(
+                        directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+                Files.setPosixFilePermissions(directory, OWNER_ONLY_DIRECTORY);
+            }
+            if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                throw new IOException(
+                        "The daemon socket location is not a directory: " + directory);
+            }
+            Set<PosixFilePermission> permissions =
+                    Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS);
+            if (!OWNER_ONLY_DIRECTORY.containsAll(permissions)) {
+                throw new IOException(
+                        "The daemon socket directory "
+                                + directory
+                                + " is accessible by other users ("
+                                + PosixFilePermissions.toString(permissions)
+                                + "), restrict it to rwx------");
+            }
+        } catch (UnsupportedOperationException e) {
+            throw new IOException(
+                    "Cannot restrict access to the daemon socket directory " + directory, e);
+        }
+    }
+
+    /**
+     * Restricts the freshly bound socket to its owner and checks that the owner also owns the
+     * directory around it.
+     *
+     * @return The owner of the socket, which is the user running the daemon.
+     */
+    private static UserPrincipal restrictToOwner(Path socket) throws IOException {
+        try {
+            Files.setPosixFilePermissions(socket, OWNER_ONLY_SOCKET);
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("Cannot restrict access to the daemon socket " + socket, e);
+        }
+        UserPrincipal owner = Files.getOwner(socket, LinkOption.NOFOLLOW_LINKS);
+        Path directory = socket.getParent();
+        if (!owner.equals(Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS))) {
+            throw new IOException(
+                    "The daemon socket directory " + directory + " is not owned by " + owner);
+        }
+        return owner;
+    }
+
+    /** Checks that the peer of a connection runs as the same user as the daemon. */
+    private static boolean isOwner(SocketChannel channel, UserPrincipal owner) {
+        try {
+            UserPrincipal peer = channel.getOption(ExtendedSocketOptions.SO_PEERCRED).user();
+            if (owner.equals(peer)) {
+                return true;
+            }
+            log.warn("Vault daemon refused a connection from {}", peer.getName());
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Vault daemon refused a connection without credentials: {}", e.getMessage());
+        }
+        return false;
+    }
+
+    /** Lets the command in progress finish, so it does not run after the keys are wiped. */
+    private static void stopHandlers(ExecutorService handlers) {
+        handlers.shutdown();
+        try {
+            if (!handlers.awaitTermination(COMMAND_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Vault daemon command still running after {} s", COMMAND_GRACE_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        handlers.shutdownNow();
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the daemon socket: {}", e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(Path socket) {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            log.warn("Failed to delete the daemon socket {}: {}", socket, e.getMessage());
+        }
+    }
+}
@@ -17,7 +17,7 @@ import org.apache.commons.lang3.StringUtils;
  */
 @Getter
 @ToString
-@Builder(access = AccessLevel.PRIVATE)
+@Builder(access = AccessLevel.PACKAGE)
 public class Account implements Serializable {
 
     @Serial private static final long serialVersionUID = 1L;
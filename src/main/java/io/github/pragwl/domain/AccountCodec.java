@@ -0,0 +1,270 @@
+package io.github.pragwl.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Compact binary codec for {@link Account} and {@link VersionHistory} records, used instead of
+ * Java serialization.
+ *
+ * <p>Layout: {@code [magic: 1][schema version: 1][presence flags: 1][name][id][createdOn]} followed
+ * by {@code [password]}, {@code [updateOn]} and {@code [version]} when their presence flag is set.
+ * Strings and byte arrays are written as a varint length followed by the bytes, timestamps as the
+ * varint epoch second in UTC followed by the varint nanosecond, and the version as a varint. A
+ * password is written as its ciphertext, salt and encryption key; another presence flag marks
+ * passwords encrypted with {@link Password#SCHEME_AES_GCM}, whose salt is the nonce.
+ *
+ * <p>A version history is written as {@code [magic: 1][schema version: 1][name][createdOn][entry
+ * count]} followed by {@code [version][location][storage key]} per entry.
+ *
+ * <p>Java serialization streams always start with {@code 0xACED}, so the magic bytes tell the
+ * encodings apart.
+ */
+public final class AccountCodec {
+
+    private static final byte MAGIC = 'A';
+    private static final byte HISTORY_MAGIC = 'H';
+    private static final byte SCHEMA_VERSION = 1;
+    private static final int HAS_PASSWORD = 1;
+    private static final int HAS_UPDATE_ON = 1 << 1;
+    private static final int HAS_VERSION = 1 << 2;
+    private static final int AES_GCM_PASSWORD = 1 << 3;
+
+    private AccountCodec() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Checks whether the data was produced by {@link #encode(Account)} or {@link
+     * #encode(VersionHistory)}.
+     *
+     * @param data The buffer holding the data between position and limit. Left untouched.
+     * @return `true` if the data starts with one of the codec magic bytes.
+     */
+    public static boolean isEncoded(ByteBuffer data) {
+        if (!data.hasRemaining()) {
+            return false;
+        }
+        byte magic = data.get(data.position());
+        return magic == MAGIC || magic == HISTORY_MAGIC;
+    }
+
+
+    /**
+     * Encodes an account.
+     *
+     * @param account The account to encode.
+     * @return The encoded account.
+     */
+    public static byte[] encode(Account account) {
+        Password password = account.getPassword();
+        int flags =
+                (password != null ? HAS_PASSWORD : 0)
+                        | (account.getUpdateOn() != null ? HAS_UPDATE_ON : 0)
+                        | (account.getVersion() != null ? HAS_VERSION : 0)
+                        | (password != null && password.getScheme() == Password.SCHEME_AES_GCM
+                                ? AES_GCM_PASSWORD
+                                : 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(MAGIC);
+        out.write(SCHEMA_VERSION);
+        out.write(flags);
+        writeString(out, account.getName());
+        writeString(out, account.getId());
+        writeDateTime(out, account.getCreatedOn());
+        if (password != null) {
+            writeString(out, password.getPassword());
+            writeBytes(out, password.getSalt());
+            writeString(out, password.getEncryptionKey());
+        }
+        if (account.getUpdateOn() != null) {
+            writeDateTime(out, account.getUpdateOn());
+        }
+        if (account.getVersion() != null) {
+            writeVarLong(out, account.getVersion());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes an account produced by {@link #encode(Account)}.
+     *
+     * @param data The buffer holding the encoded account between position and limit. Its position
+     *     is advanced past the account.
+     * @return The decoded account.
+     * @throws IllegalArgumentException if the data is not a valid encoded account.
+     */
+    public static Account decode(ByteBuffer data) {
+        try {
+            if (data.get() != MAGIC) {
+                throw new IllegalArgumentException("Not an encoded account.");
+            }
+            byte schemaVersion = data.get();
+            if (schemaVersion != SCHEMA_VERSION) {
+                throw new IllegalArgumentException(
+                        "Unsupported account schema version: " + schemaVersion);
+            }
+            int flags = data.get();
+
+            Account.AccountBuilder builder =
+                    Account.builder()
+                            .name(readString(data))
+                            .id(readString(data))
+                            .createdOn(readDateTime(data));
+            if ((flags & HAS_PASSWORD) != 0) {
+                int scheme =
+                        (flags & AES_GCM_PASSWORD) != 0
+                                ? Password.SCHEME_AES_GCM
+                                : Password.SCHEME_PBKDF2;
+                builder.password(
+                        new Password(readString(data), readBytes(data), readString(data), scheme));
+            }
+            if ((flags & HAS_UPDATE_ON) != 0) {
+                builder.updateOn(readDateTime(data));
+            }
+            if ((flags & HAS_VERSION) != 0) {
+                builder.version(Math.toIntExact(readVarLong(data)));
+            }
+            return builder.build();
+        } catch (BufferUnderflowException | ArithmeticException | DateTimeException e) {
+            throw new IllegalArgumentException("Truncated or corrupt account record.", e);
+        }
+    }
+
+    /**
+     * Encodes a version history.
+     *
+     * @param history The history to encode.
+     * @return The encoded history.
+     */
+    public static byte[] encode(VersionHistory history) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(HISTORY_MAGIC);
+        out.write(SCHEMA_VERSION);
+        writeString(out, history.getName());
+        writeDateTime(out, history.getCreatedOn());
+        writeVarLong(out, history.getEntries().size());
+        for (VersionHistory.Entry entry : history.getEntries()) {
+            writeVarLong(out, entry.getVersion());
+            out.write(entry.getLocation().ordinal());
+            writeString(out, entry.getStorageKey());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a record produced by either {@code encode} method.
+     *
+     * @param data The buffer holding the record between position and limit. Its position is
+     *     advanced past the record.
+     * @return The decoded {@link Account} or {@link VersionHistory}.
+     * @throws IllegalArgumentException if the data is not a valid encoded record.
+     */
+    public static Object decodeRecord(ByteBuffer data) {
+        if (data.hasRemaining() && data.get(data.position()) == HISTORY_MAGIC) {
+            return decodeHistory(data);
+        }
+        return decode(data);
+    }
+
+    private static VersionHistory decodeHistory(ByteBuffer data) {
+        try {
+            data.get();
+            byte schemaVersion = data.get();
+            if (schemaVersion != SCHEMA_VERSION) {
+                throw new IllegalArgumentException(
+                        "Unsupported history schema version: " + schemaVersion);
+            }
+            VersionHistory history = new VersionHistory(readString(data), readDateTime(data));
+            long entryCount = readVarLong(data);
+            VersionHistory.Location[] locations = VersionHistory.Location.values();
+            for (long i = 0; i < entryCount; i++) {
+                int version = Math.toIntExact(readVarLong(data));
+                int location = data.get();
+                if (location < 0 || location >= locations.length) {
+                    throw new IllegalArgumentException("Unknown version location: " + location);
+                }
+                history.record(version, locations[location], readString(data));
+            }
+            return history;
+        } catch (BufferUnderflowException | ArithmeticException | DateTimeException e) {
+            throw new IllegalArgumentException("Truncated or corrupt history record.", e);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] value) {
+        writeVarLong(out, value.length);
+        out.write(value, 0, value.length);
+    }
+
+    private static void writeDateTime(ByteArrayOutputStream out, LocalDateTime value) {
+        writeVarLong(out, value.toEpochSecond(ZoneOffset.UTC));
+        writeVarLong(out, value.getNano());
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static String readString(ByteBuffer data) {
+        if (!data.hasArray()) {
+            return new String(readBytes(data), StandardCharsets.UTF_8);
+        }
+        // Decode straight from the backing array to avoid an intermediate copy
+        int length = readLength(data);
+        String value =
+                new String(
+                        data.array(),
+                        data.arrayOffset() + data.position(),
+                        length,
+                        StandardCharsets.UTF_8);
+        data.position(data.position() + length);
+        return value;
+    }
+
+    private static byte[] readBytes(ByteBuffer data) {
+        byte[] value = new byte[readLength(data)];
+        data.get(value);
+        return value;
+    }
+
+    private static LocalDateTime readDateTime(ByteBuffer data) {
+        long epochSecond = readVarLong(data);
+        int nano = Math.toIntExact(readVarLong(data));
+        return LocalDateTime.ofEpochSecond(epochSecond, nano, ZoneOffset.UTC);
+    }
+
+    private static int readLength(ByteBuffer data) {
+        long length = readVarLong(data);
+        if (length < 0 || length > data.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return (int) length;
+    }
+
+    private static long readVarLong(ByteBuffer data) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = data.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in account record.");
+    }
+}
@@ -0,0 +1,109 @@
+package io.github.pragwl.domain;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The versions of one account and where each version is stored. All versions of an account share
+ * its name and creation time, which identify the history.
+ */
+@Getter
+public class VersionHistory {
+
+    /** The name of the account. */
+    @NonNull private final String name;
+
+    /** The creation time shared by all versions of the account. */
+    @NonNull private final LocalDateTime createdOn;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Creates an empty history.
+     *
+     * @param name The name of the account.
+     * @param createdOn The creation time of the account.
+     */
+    public VersionHistory(@NonNull String name, @NonNull LocalDateTime createdOn) {
+        this.name = name;
+        this.createdOn = createdOn;
+    }
+
+    /**
+     * Copies the history, so the copy can be stored while this history keeps changing.
+     *
+     * @return A history with the same versions.
+     */
+    public VersionHistory copy() {
+        VersionHistory copy = new VersionHistory(name, createdOn);
+        copy.entries.addAll(entries);
+        return copy;
+    }
+
+    /**
+     * Checks whether an account is a version of this history.
+     *
+     * @param account The account to check.
+     * @return `true` if the account has the name and creation time of this history.
+     */
+    public boolean contains(Account account) {
+        return name.equals(account.getName()) && createdOn.equals(account.getCreatedOn());
+    }
+
+    /**
+     * Retrieves the versions ordered by version number.
+     *
+     * @return An unmodifiable view of the versions.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Records where a version is stored, replacing an earlier entry of the same version.
+     *
+     * @param version The version number.
+     * @param location The part of the vault holding the version.
+     * @param storageKey The key of the version in the vault.
+     */
+    public void record(int version, Location location, String storageKey) {
+        remove(version);
+        entries.add(new Entry(version, location, storageKey));
+        entries.sort(Comparator.comparingInt(Entry::getVersion));
+    }
+
+    /**
+     * Removes a version.
+     *
+     * @param version The version number.
+     * @return `true` if the version was part of the history.
+     */
+    public boolean remove(int version) {
+        return entries.removeIf(entry -> entry.getVersion() == version);
+    }
+
+    /** Where a version is stored. */
+    public enum Location {
+        ACTIVE,
+        ARCHIVED
+    }
+
+    /** A version of the account and its storage location. */
+    @Getter
+    public static final class Entry {
+        private final int version;
+        private final Location location;
+        private final String storageKey;
+
+        private Entry(int version, Location location, String storageKey) {
+            this.version = version;
+            this.location = location;
+            this.storageKey = storageKey;
+        }
+    }
+}
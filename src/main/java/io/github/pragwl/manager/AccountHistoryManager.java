@@ -0,0 +1,216 @@
+package io.github.pragwl.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.domain.VersionHistory;
+import io.github.pragwl.store.RecordWriter;
+import io.github.pragwl.store.VaultStore;
+import io.github.pragwl.store.WriteBehindQueue;
+import io.github.pragwl.utility.HashUtility;
+import io.github.pragwl.utility.Utility;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Links the versions of each account. This class implements the Singleton pattern.
+ *
+ * <p>The history of an account is identified by its name and creation time, which every version
+ * shares. Each history is stored as its own record in the {@link VaultStore.Section#HISTORY}
+ * section, so an update rewrites only the history of the updated account, and looking up a history
+ * never decrypts unrelated archive records. Vaults written before the history existed have their
+ * histories rebuilt once from the stored accounts.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class AccountHistoryManager {
+
+    private static AccountHistoryManager accountHistoryManager;
+    private final Map<String, VersionHistory> histories = initializeHistories();
+
+    /**
+     * Retrieves the singleton instance of `AccountHistoryManager`.
+     *
+     * @return The singleton instance.
+     */
+    public static AccountHistoryManager getInstance() {
+        if (accountHistoryManager == null) {
+            synchronized (AccountHistoryManager.class) {
+                if (accountHistoryManager == null) {
+                    accountHistoryManager = new AccountHistoryManager();
+                }
+            }
+        }
+        return accountHistoryManager;
+    }
+
+    private Map<String, VersionHistory> initializeHistories() {
+        VaultStore store = VaultStore.getInstance();
+        List<String> keys = store.keys(VaultStore.Section.HISTORY);
+        if (keys.isEmpty()
+                && (!store.keys(VaultStore.Section.ACTIVE).isEmpty()
+                        || !store.keys(VaultStore.Section.ARCHIVED).isEmpty())) {
+            return rebuildHistories();
+        }
+
+        Map<String, VersionHistory> loaded = new HashMap<>();
+        for (String key : keys) {
+            try {
+                if (store.read(VaultStore.Section.HISTORY, key) instanceof VersionHistory history) {
+                    loaded.put(key, history);
+                } else {
+                    log.error("Failed to load history {}: not a readable history record", key);
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to load history {}: {}", key, e.getMessage());
+            }
+        }
+        log.info("Loaded {} account histories", loaded.size());
+        return loaded;
+    }
+
+    private Map<String, VersionHistory> rebuildHistories() {
+        Map<String, VersionHistory> rebuilt = new HashMap<>();
+        VaultStore store = VaultStore.getInstance();
+        for (VaultStore.Section section :
+                List.of(VaultStore.Section.ACTIVE, VaultStore.Section.ARCHIVED)) {
+            VersionHistory.Location location =
+                    section == VaultStore.Section.ACTIVE
+                            ? VersionHistory.Location.ACTIVE
+                            : VersionHistory.Location.ARCHIVED;
+            Map<String, Account> accounts =
+                    AccountLoader.loadByKey(section, store.keys(section)).getAccounts();
+            for (Map.Entry<String, Account> record : accounts.entrySet()) {
+                Account account = record.getValue();
+                rebuilt.computeIfAbsent(historyKey(account), k -> newHistory(account))
+                        .record(version(account), location, record.getKey());
+            }
+        }
+        VaultStore.Transaction transaction = store.begin();
+        rebuilt.forEach(
+                (key, history) -> transaction.put(VaultStore.Section.HISTORY, key, history));
+        transaction.commit();
+        log.info("Rebuilt {} account histories from the stored accounts", rebuilt.size());
+        return rebuilt;
+    }
+
+    /**
+     * Retrieves the versions of an account and where they are stored, without reading any account
+     * record.
+     *
+     * @param account Any version of the account.
+     * @return The versions ordered by version number, or an empty list if none are known.
+     */
+    public List<VersionHistory.Entry> historyOf(Account account) {
+        VersionHistory history = histories.get(historyKey(account));
+        return history == null ? List.of() : history.getEntries();
+    }
+
+    /**
+     * Reads every version of an account. Only the records of this account are decrypted.
+     *
+     * @param account Any version of the account.
+     * @return The readable versions ordered by version number.
+     */
+    public List<Account> versionsOf(Account account) {
+        List<Account> versions = new ArrayList<>();
+        for (VersionHistory.Entry entry : historyOf(account)) {
+            String key = entry.getStorageKey();
+            Account version;
+            if (entry.getLocation() == VersionHistory.Location.ARCHIVED) {
+                version = ArchivedAccountManager.getInstance().getAccountByKey(key);
+            } else {
+                version =
+                        (Account)
+                                WriteBehindQueue.getInstance()
+                                        .read(VaultStore.Section.ACTIVE, key);
+            }
+            if (version != null) {
+                versions.add(version);
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Records a newly added active account. The history is written with the given writer, so it
+     * is stored together with the account.
+     *
+     * @param account The added account.
+     * @param writer The writer adding the account.
+     */
+    public void recordAdded(Account account, RecordWriter writer) {
+        String key = historyKey(account);
+        VersionHistory history = histories.computeIfAbsent(key, k -> newHistory(account));
+        history.record(
+                version(account),
+                VersionHistory.Location.ACTIVE,
+                Utility.getFileNameForAccountObject(account));
+        save(key, history, writer);
+    }
+
+    /**
+     * Records that an active account was replaced by a new version and archived.
+     *
+     * @param original The archived version.
+     * @param updated The new active version.
+     * @param writer The writer storing both versions.
+     */
+    public void recordUpdated(Account original, Account updated, RecordWriter writer) {
+        String key = historyKey(original);
+        VersionHistory history = histories.computeIfAbsent(key, k -> newHistory(original));
+        history.record(
+                version(original),
+                VersionHistory.Location.ARCHIVED,
+                Utility.getFileNameForAccountObject(original));
+        history.record(
+                version(updated),
+                VersionHistory.Location.ACTIVE,
+                Utility.getFileNameForAccountObject(updated));
+        save(key, history, writer);
+    }
+
+    /**
+     * Records that an active account was deleted. Archived versions stay in the history.
+     *
+     * @param account The deleted account.
+     * @param writer The writer deleting the account.
+     */
+    public void recordDeleted(Account account, RecordWriter writer) {
+        String key = historyKey(account);
+        VersionHistory history = histories.get(key);
+        if (history != null && history.remove(version(account))) {
+            save(key, history, writer);
+        }
+    }
+
+    private void save(String key, VersionHistory history, RecordWriter writer) {
+        if (history.getEntries().isEmpty()) {
+            histories.remove(key);
+            writer.delete(VaultStore.Section.HISTORY, key);
+        } else {
+            // Store a snapshot, since the writer may encrypt it after the history changed again
+            writer.put(VaultStore.Section.HISTORY, key, history.copy());
+        }
+    }
+
+    private static VersionHistory newHistory(Account account) {
+        return new VersionHistory(account.getName(), account.getCreatedOn());
+    }
+
+    private static String historyKey(Account account) {
+        return HashUtility.hasher()
+                .update(account.getName())
+                .update(account.getCreatedOn().toString())
+                .hex();
+    }
+
+    private static int version(Account account) {
+        return Objects.requireNonNullElse(account.getVersion(), 0);
+    }
+}
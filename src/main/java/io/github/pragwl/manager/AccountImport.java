@@ -0,0 +1,197 @@
+package io.github.pragwl.manager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.store.VaultStore;
+import io.github.pragwl.utility.OrderedWorkers;
+import io.github.pragwl.utility.SerializationUtil;
+import io.github.pragwl.utility.Utility;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Imports accounts in bulk from a CSV or JSON file.
+ *
+ * <p>The file is parsed one row at a time. Worker threads create the accounts, which derives the
+ * key of each password, and encrypt the account records, while the calling thread streams the
+ * results in file order into a single {@link VaultStore.BulkTransaction}, through {@link
+ * OrderedWorkers} named {@code import}.
+ *
+ * <p>Rows with a blank name, id or password are rejected, and rows whose name and id match an
+ * active account, whatever its version, or an earlier row are skipped, ignoring case as account
+ * lookups do. Either way the rest of the file is imported. All imported accounts become visible
+ * together when the import commits; if it fails part way, none of them are kept.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class AccountImport {
+
+    /** Supported import file formats. */
+    public enum Format {
+        CSV,
+        JSON;
+
+        /**
+         * Determines the format of a file from its extension.
+         *
+         * @param path The file.
+         * @return {@link #JSON} for {@code .json} files, {@link #CSV} otherwise.
+         */
+        public static Format of(Path path) {
+            return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")
+                    ? JSON
+                    : CSV;
+        }
+    }
+
+    /**
+     * Imports every account of a file as a new active account.
+     *
+     * @param path The file to import.
+     * @param format The format of the file.
+     * @return The number of imported, rejected and skipped rows.
+     * @throws IOException if the file cannot be read or is malformed. Nothing is imported then.
+     * @throws IllegalStateException if the import is interrupted.
+     * @throws RuntimeException if writing the vault fails. Nothing is imported then.
+     */
+    public static Result importFile(Path path, Format format) throws IOException {
+        VaultStore store = VaultStore.getInstance();
+        AccountHistoryManager historyManager = AccountHistoryManager.getInstance();
+        ActiveAccountsManager activeAccManager = ActiveAccountsManager.getInstance();
+        // Identities of the rows imported so far; existing accounts are looked up in the index
+        Set<String> importedIdentities = new HashSet<>();
+
+        int imported = 0;
+        int rejected = 0;
+        int skipped = 0;
+        long elapsedMillis;
+        try (OrderedWorkers<ImportedAccount> workers = new OrderedWorkers<>("import", 8);
+                AccountRowReader reader = open(path, format);
+                VaultStore.BulkTransaction transaction = store.beginBulk()) {
+            boolean endOfInput = false;
+            while (true) {
+                while (!endOfInput && !workers.isFull()) {
+                    AccountRowReader.Row row = reader.next();
+                    if (row == null) {
+                        endOfInput = true;
+                    } else {
+                        workers.submit(() -> encrypt(row));
+                    }
+                }
+                if (workers.isEmpty()) {
+                    break;
+                }
+
+                ImportedAccount result = workers.take();
+                if (result.account == null) {
+                    rejected++;
+                } else if (exists(activeAccManager, result.account)
+                        || !importedIdentities.add(identity(result.account))) {
+                    log.warn("Skipping row {}: the account already exists", result.row);
+                    skipped++;
+                } else {
+                    transaction.putEncrypted(VaultStore.Section.ACTIVE, result.key, result.payload);
+                    historyManager.recordAdded(result.account, transaction);
+                    imported++;
+                }
+                workers.logProgress("Imported", imported, "accounts");
+            }
+            transaction.commit();
+            elapsedMillis =
+                    workers.logFinished(
+                            "Imported "
+                                    + imported
+                                    + " accounts from "
+                                    + path
+                                    + ", "
+                                    + rejected
+                                    + " rejected, "
+                                    + skipped
+                                    + " skipped,",
+                            imported,
+                            "accounts");
+        }
+        return new Result(imported, rejected, skipped, elapsedMillis);
+    }
+
+    private static AccountRowReader open(Path path, Format format) throws IOException {
+        Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        try {
+            return format == Format.JSON
+                    ? new JsonAccountReader(reader)
+                    : new CsvAccountReader(reader);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    private static boolean exists(ActiveAccountsManager activeAccManager, Account account) {
+        return activeAccManager.findByName(account.getName()).stream()
+                .anyMatch(existing -> existing.getId().equalsIgnoreCase(account.getId()));
+    }
+
+    /** Identifies an account by name and id, ignoring case, like {@link #exists}. */
+    private static String identity(Account account) {
+        return account.getName().toLowerCase(Locale.ROOT)
+                + '\0'
+                + account.getId().toLowerCase(Locale.ROOT);
+    }
+
+    /** Creates and encrypts the account of a row, or rejects the row if it is incomplete. */
+    private static ImportedAccount encrypt(AccountRowReader.Row row) {
+        Account account;
+        try {
+            account = Account.newAccount(row.getName(), row.getId(), row.getPassword());
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejecting row {}: {}", row.getNumber(), e.getMessage());
+            return new ImportedAccount(row.getNumber(), null, null, null);
+        }
+        return new ImportedAccount(
+                row.getNumber(),
+                account,
+                Utility.getFileNameForAccountObject(account),
+                SerializationUtil.toEncryptedBytes(account));
+    }
+
+    /** The outcome of an import. */
+    @Getter
+    public static final class Result {
+        private final int imported;
+        private final int rejected;
+        private final int skipped;
+        private final long elapsedMillis;
+
+        private Result(int imported, int rejected, int skipped, long elapsedMillis) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.skipped = skipped;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    /** An account created from a row, ready to be written. Rejected rows have no account. */
+    private static final class ImportedAccount {
+        private final long row;
+        private final Account account;
+        private final String key;
+        private final byte[] payload;
+
+        private ImportedAccount(long row, Account account, String key, byte[] payload) {
+            this.row = row;
+            this.account = account;
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+}
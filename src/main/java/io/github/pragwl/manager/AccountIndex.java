@@ -0,0 +1,156 @@
+package io.github.pragwl.manager;
+
+import io.github.pragwl.domain.Account;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * In-memory lookup index of accounts by name and by id. Exact lookups go through a hash map and
+ * prefix lookups through a trie, so neither scans the accounts. Matching ignores case. Results are
+ * returned in the order of the comparator the index was created with.
+ *
+ * <p>This class is not thread-safe.
+ */
+final class AccountIndex {
+
+    private final Comparator<Account> order;
+    private final Field byName;
+    private final Field byId;
+
+    AccountIndex(Comparator<Account> order) {
+        this.order = order;
+        this.byName = new Field(Account::getName);
+        this.byId = new Field(Account::getId);
+    }
+
+    void add(Account account) {
+        byName.add(account);
+        byId.add(account);
+    }
+
+    void addAll(Collection<Account> accounts) {
+        accounts.forEach(this::add);
+    }
+
+    void remove(Account account) {
+        byName.remove(account);
+        byId.remove(account);
+    }
+
+    List<Account> findByName(String name) {
+        return byName.find(name);
+    }
+
+    List<Account> findById(String id) {
+        return byId.find(id);
+    }
+
+    List<Account> findByNamePrefix(String prefix) {
+        return byName.findByPrefix(prefix);
+    }
+
+    List<Account> findByIdPrefix(String prefix) {
+        return byId.findByPrefix(prefix);
+    }
+
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /** Hash and trie index over one account attribute. */
+    private final class Field {
+        private final Function<Account, String> attribute;
+        private final Map<String, TreeSet<Account>> accountsByKey = new HashMap<>();
+        private final TrieNode trie = new TrieNode();
+
+        private Field(Function<Account, String> attribute) {
+            this.attribute = attribute;
+        }
+
+        private void add(Account account) {
+            String key = normalize(attribute.apply(account));
+            TreeSet<Account> accounts = accountsByKey.get(key);
+            if (accounts == null) {
+                accounts = new TreeSet<>(order);
+                accountsByKey.put(key, accounts);
+                trie.insert(key);
+            }
+            accounts.add(account);
+        }
+
+        private void remove(Account account) {
+            String key = normalize(attribute.apply(account));
+            TreeSet<Account> accounts = accountsByKey.get(key);
+            if (accounts != null && accounts.remove(account) && accounts.isEmpty()) {
+                accountsByKey.remove(key);
+                trie.delete(key, 0);
+            }
+        }
+
+        private List<Account> find(String value) {
+            TreeSet<Account> accounts = accountsByKey.get(normalize(value));
+            return accounts == null ? List.of() : List.copyOf(accounts);
+        }
+
+        private List<Account> findByPrefix(String prefix) {
+            TrieNode node = trie.find(normalize(prefix));
+            if (node == null) {
+                return List.of();
+            }
+            List<String> keys = new ArrayList<>();
+            node.collectKeys(keys);
+            TreeSet<Account> matches = new TreeSet<>(order);
+            keys.forEach(key -> matches.addAll(accountsByKey.get(key)));
+            return List.copyOf(matches);
+        }
+    }
+
+    /** Trie node; a node holding a key marks the end of an indexed value. */
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        private String key;
+
+        private void insert(String value) {
+            TrieNode node = this;
+            for (int i = 0; i < value.length(); i++) {
+                node = node.children.computeIfAbsent(value.charAt(i), c -> new TrieNode());
+            }
+            node.key = value;
+        }
+
+        /** Deletes a value below this node, pruning nodes left without keys or children. */
+        private boolean delete(String value, int depth) {
+            if (depth == value.length()) {
+                key = null;
+            } else {
+                TrieNode child = children.get(value.charAt(depth));
+                if (child != null && child.delete(value, depth + 1)) {
+                    children.remove(value.charAt(depth));
+                }
+            }
+            return key == null && children.isEmpty();
+        }
+
+        private TrieNode find(String prefix) {
+            TrieNode node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(prefix.charAt(i));
+            }
+            return node;
+        }
+
+        private void collectKeys(List<String> keys) {
+            if (key != null) {
+                keys.add(key);
+            }
+            children.values().forEach(child -> child.collectKeys(keys));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.github.pragwl.manager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.store.VaultStore;
+import io.github.pragwl.store.WriteBehindQueue;
+import io.github.pragwl.utility.Metrics;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+/**
+ * Loads accounts from the vault store, decrypting the records on a worker pool. Records still
+ * queued in the {@link WriteBehindQueue} are returned in their queued state. The number of workers
+ * defaults to the number of available processors and can be set with the
+ * {@code credvault.loader.threads} system property. Load times, loaded records and failures are
+ * recorded in the {@link Metrics}.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class AccountLoader {
+
+    private static final int PARALLELISM =
+            Math.max(
+                    1,
+                    Integer.getInteger(
+                            "credvault.loader.threads",
+                            Runtime.getRuntime().availableProcessors()));
+    private static final Metrics.Timer LOAD_TIME =
+            Metrics.timer("credvault_load_seconds", "Time spent loading a batch of records.");
+    private static final Metrics.Histogram RECORDS_LOADED =
+            Metrics.histogram("credvault_records_loaded", "Records loaded per batch.");
+    private static final Metrics.Counter LOAD_FAILURES =
+            Metrics.counter("credvault_load_failures_total", "Records that could not be loaded.");
+
+    /**
+     * Loads every live account record of a vault section into a collection. Records are decrypted
+     * concurrently and merged on the calling thread, so the collection does not need to be
+     * thread-safe.
+     *
+     * @param section The vault section to load.
+     * @param collectionFactory Creates the collection the loaded accounts are merged into.
+     * @param <C> The type of the collection.
+     * @return The load result holding the accounts and any per-record failures.
+     */
+    public static <C extends Collection<Account>> LoadResult<C> loadSection(
+            VaultStore.Section section, Supplier<C> collectionFactory) {
+        C accounts = collectionFactory.get();
+        List<String> keys = VaultStore.getInstance().keys(section);
+        List<LoadFailure> failures = load(section, keys, (key, account) -> accounts.add(account));
+        return new LoadResult<>(accounts, failures);
+    }
+
+    /**
+     * Loads the given account records, keeping track of the key each account was read from.
+     *
+     * @param section The vault section holding the records.
+     * @param keys The keys of the records to load.
+     * @return The load result holding the accounts by key and any per-record failures.
+     */
+    public static LoadResult<Map<String, Account>> loadByKey(
+            VaultStore.Section section, List<String> keys) {
+        Map<String, Account> accounts = new LinkedHashMap<>();
+        List<LoadFailure> failures = load(section, keys, accounts::put);
+        return new LoadResult<>(accounts, failures);
+    }
+
+    private static List<LoadFailure> load(
+            VaultStore.Section section, List<String> keys, BiConsumer<String, Account> sink) {
+        WriteBehindQueue queue = WriteBehindQueue.getInstance();
+        long start = System.nanoTime();
+        int loaded = 0;
+        List<LoadFailure> failures = new ArrayList<>();
+
+        if (!keys.isEmpty()) {
+            ForkJoinPool pool = new ForkJoinPool(Math.min(PARALLELISM, keys.size()));
+            try {
+                List<ForkJoinTask<Object>> futures =
+                        keys.stream()
+                                .map(key -> pool.submit(() -> queue.read(section, key)))
+                                .toList();
+                for (int i = 0; i < futures.size(); i++) {
+                    String key = keys.get(i);
+                    try {
+                        Object obj = futures.get(i).get();
+                        if (obj instanceof Account account) {
+                            sink.accept(key, account);
+                            loaded++;
+                        } else {
+                            failures.add(new LoadFailure(key, "Not a readable account record"));
+                        }
+                    } catch (ExecutionException e) {
+                        failures.add(new LoadFailure(key, ExceptionUtils.getRootCauseMessage(e)));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while loading " + section, e);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        LOAD_TIME.stop(start);
+        RECORDS_LOADED.observe(loaded);
+        LOAD_FAILURES.add(failures.size());
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        failures.forEach(
+                failure ->
+                        log.error(
+                                "Failed to load {}/{}: {}",
+                                section,
+                                failure.getKey(),
+                                failure.getReason()));
+        log.info(
+                "Loaded {} of {} {} records in {} ms ({} records/s, {} failures)",
+                loaded,
+                keys.size(),
+                section,
+                elapsedMillis,
+                keys.size() * 1000L / elapsedMillis,
+                failures.size());
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Result of a load: the loaded accounts and the records that could not be loaded.
+     *
+     * @param <C> The type of the container holding the accounts.
+     */
+    @Getter
+    public static final class LoadResult<C> {
+        private final C accounts;
+        private final List<LoadFailure> failures;
+
+        private LoadResult(C accounts, List<LoadFailure> failures) {
+            this.accounts = accounts;
+            this.failures = failures;
+        }
+    }
+
+    /** A record that could not be loaded, with the reason. */
+    @Getter
+    public static final class LoadFailure {
+        private final String key;
+        private final String reason;
+
+        private LoadFailure(String key, String reason) {
+            this.key = key;
+            this.reason = reason;
+        }
+    }
+}
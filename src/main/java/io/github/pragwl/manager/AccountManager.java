@@ -2,6 +2,11 @@ package io.github.pragwl.manager;
 
 import io.github.pragwl.domain.Account;
 import io.github.pragwl.domain.Password;
+import io.github.pragwl.utility.PasswordCache;
+import io.github.pragwl.utility.Utility;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Abstract base class for account managers, providing common functionalities for creating,
@@ -9,6 +14,17 @@ import io.github.pragwl.domain.Password;
  */
 public abstract class AccountManager {
 
+    /**
+     * Order in which managers keep their accounts: by creation time, then by version. Accounts
+     * created at the same instant, as in a parallel import, are told apart by name and ID, so none
+     * of them is taken for a duplicate by the sorted sets.
+     */
+    protected static final Comparator<Account> ACCOUNT_ORDER =
+            Comparator.comparing(Account::getCreatedOn)
+                    .thenComparing(Account::getVersion)
+                    .thenComparing(Account::getName)
+                    .thenComparing(Account::getId);
+
     /**
      * Adds a new account.
      *
@@ -61,6 +77,55 @@ public abstract class AccountManager {
         return updatedAccount;
     }
 
+    /**
+     * Decrypts the password of an account into a string. The string cannot be wiped, so this is
+     * only for callers that need one, such as the AWT clipboard; everything else should use {@link
+     * #getDecryptedPasswordChars(Account)}.
+     *
+     * @param account The account whose password to decrypt.
+     * @return The decrypted password.
+     */
+    public String getDecryptedPassword(Account account) {
+        char[] plaintext = getDecryptedPasswordChars(account);
+        try {
+            return new String(plaintext);
+        } finally {
+            Arrays.fill(plaintext, '\0');
+        }
+    }
+
+    /**
+     * Decrypts the password of an account. If the {@link PasswordCache} is enabled, repeated calls
+     * for the same password within its TTL are served from the cache.
+     *
+     * @param account The account whose password to decrypt.
+     * @return The decrypted password. The caller should wipe it after use.
+     */
+    public char[] getDecryptedPasswordChars(Account account) {
+        return PasswordCache.getInstance()
+                .get(passwordCacheKey(account), account.getPassword()::getDecryptedPasswordChars);
+    }
+
+    /**
+     * Removes the cached plaintext of an account's password, if any.
+     *
+     * @param account The account whose password is no longer needed.
+     */
+    public static void forgetDecryptedPassword(Account account) {
+        PasswordCache.getInstance().invalidate(passwordCacheKey(account));
+    }
+
+    /**
+     * Identifies a password in the {@link PasswordCache}. The storage key alone repeats when an
+     * account is deleted and added again with the same name and ID, so the ciphertext, which is
+     * encrypted under a random key and nonce, tells the passwords apart.
+     */
+    private static String passwordCacheKey(Account account) {
+        return Utility.getFileNameForAccountObject(account)
+                + '/'
+                + account.getPassword().getPassword();
+    }
+
     /**
      * Deletes an account.
      *
@@ -87,4 +152,52 @@ public abstract class AccountManager {
      * @return `true` if there are accounts, `false` otherwise.
      */
     public abstract boolean hasAccounts();
+
+    /**
+     * Finds the accounts with the given name, ignoring case.
+     *
+     * @param name The account name.
+     * @return The matching accounts in account order, or an empty list.
+     */
+    public List<Account> findByName(String name) {
+        return getAccountIndex().findByName(name);
+    }
+
+    /**
+     * Finds the accounts with the given id, ignoring case.
+     *
+     * @param id The account id.
+     * @return The matching accounts in account order, or an empty list.
+     */
+    public List<Account> findById(String id) {
+        return getAccountIndex().findById(id);
+    }
+
+    /**
+     * Finds the accounts whose name starts with the given prefix, ignoring case.
+     *
+     * @param prefix The name prefix.
+     * @return The matching accounts in account order, or an empty list.
+     */
+    public List<Account> findByNamePrefix(String prefix) {
+        return getAccountIndex().findByNamePrefix(prefix);
+    }
+
+    /**
+     * Finds the accounts whose id starts with the given prefix, ignoring case.
+     *
+     * @param prefix The id prefix.
+     * @return The matching accounts in account order, or an empty list.
+     */
+    public List<Account> findByIdPrefix(String prefix) {
+        return getAccountIndex().findByIdPrefix(prefix);
+    }
+
+    /**
+     * Retrieves the name and id index of the managed accounts. Implementations keep it up to date
+     * in {@link #addAccount(Account)} and {@link #deleteAccount(Account)}.
+     *
+     * @return The account index.
+     */
+    abstract AccountIndex getAccountIndex();
 }
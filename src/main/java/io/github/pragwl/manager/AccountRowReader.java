@@ -0,0 +1,33 @@
+package io.github.pragwl.manager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import lombok.Getter;
+
+/** Reads the accounts of an import file one row at a time, without loading the whole file. */
+interface AccountRowReader extends Closeable {
+
+    /**
+     * Reads the next row.
+     *
+     * @return The next row, or `null` at the end of the input.
+     * @throws IOException if reading fails or the input is malformed.
+     */
+    Row next() throws IOException;
+
+    /** An account to import, as read from the file. Fields missing from the file are `null`. */
+    @Getter
+    final class Row {
+        private final long number;
+        private final String name;
+        private final String id;
+        private final String password;
+
+        Row(long number, String name, String id, String password) {
+            this.number = number;
+            this.name = name;
+            this.id = id;
+            this.password = password;
+        }
+    }
+}
@@ -1,28 +1,28 @@
 package io.github.pragwl.manager;
 
 
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
 
 import io.github.pragwl.domain.Account;
+import io.github.pragwl.store.VaultStore;
 import io.github.pragwl.utility.ConsolePrinter;
-import io.github.pragwl.utility.FileUtility;
-import io.github.pragwl.utility.SerializationUtil;
-import io.github.pragwl.utility.Utility;
+import io.github.pragwl.utility.IndexedSortedSet;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
 /**
  * Manages active accounts. This class implements the Singleton pattern.
+ *
+ * <p>Accounts are kept in an {@link IndexedSortedSet}, so selecting an account by its row number
+ * does not walk the collection.
  */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class ActiveAccountsManager extends AccountManager {
 
     private static ActiveAccountsManager activeAccountsManager;
-    private final TreeSet<Account> activeAccounts = initializeActiveAccounts();
+    private final IndexedSortedSet<Account> activeAccounts = initializeActiveAccounts();
+    private final AccountIndex accountIndex = initializeAccountIndex();
 
     /**
      * Retrieves the singleton instance of `ActiveAccountsManager`.
@@ -40,21 +40,17 @@ public class ActiveAccountsManager extends AccountManager {
         return activeAccountsManager;
     }
 
-    private TreeSet<Account> initializeActiveAccounts() {
-        List<String> activeAccountNames =
-                FileUtility.getFilesListFromDirectory(AccountConfig.activeAccountDirectory);
-        return activeAccountNames.stream()
-                .map(
-                        accountName ->
-                                (Account)
-                                        SerializationUtil.deserializeObject(
-                                                AccountConfig.activeAccountDirectory, accountName))
-                .collect(
-                        Collectors.toCollection(
-                                () ->
-                                        new TreeSet<>(
-                                                Comparator.comparing(Account::getCreatedOn)
-                                                        .thenComparing(Account::getVersion))));
+    private IndexedSortedSet<Account> initializeActiveAccounts() {
+        // Sort once after loading rather than inserting into the sorted array record by record
+        List<Account> accounts =
+                AccountLoader.loadSection(VaultStore.Section.ACTIVE, ArrayList::new).getAccounts();
+        return new IndexedSortedSet<>(ACCOUNT_ORDER, accounts);
+    }
+
+    private AccountIndex initializeAccountIndex() {
+        AccountIndex index = new AccountIndex(ACCOUNT_ORDER);
+        index.addAll(activeAccounts);
+        return index;
     }
 
     /**
@@ -65,7 +61,9 @@ public class ActiveAccountsManager extends AccountManager {
      */
     @Override
     public Account addAccount(Account account) {
-        activeAccounts.add(account);
+        if (activeAccounts.add(account)) {
+            accountIndex.add(account);
+        }
         return account;
     }
 
@@ -76,7 +74,9 @@ public class ActiveAccountsManager extends AccountManager {
      */
     @Override
     public void deleteAccount(Account account) {
-        activeAccounts.remove(account);
+        if (activeAccounts.remove(account)) {
+            accountIndex.remove(account);
+        }
     }
 
     /** Displays a table of active accounts. */
@@ -96,7 +96,7 @@ public class ActiveAccountsManager extends AccountManager {
         if (index < 0 || index >= activeAccounts.size()) {
             return null;
         }
-        return Utility.getValueAtIndex(activeAccounts, index);
+        return activeAccounts.get(index);
     }
 
     /**
@@ -109,9 +109,14 @@ public class ActiveAccountsManager extends AccountManager {
         return !activeAccounts.isEmpty();
     }
 
+    @Override
+    AccountIndex getAccountIndex() {
+        return accountIndex;
+    }
+
     /**
-     * Configuration class for active accounts. Defines the directory where active accounts are
-     * stored.
+     * Configuration class for active accounts. Defines the directory where active accounts were
+     * stored before the vault store, read once during migration.
      */
     public static class AccountConfig {
         public static final String activeAccountDirectory = "accounts/";
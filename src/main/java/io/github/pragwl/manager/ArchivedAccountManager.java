@@ -1,28 +1,69 @@
 package io.github.pragwl.manager;
 
 
-import java.util.Arrays;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import io.github.pragwl.domain.Account;
+import io.github.pragwl.store.VaultStore;
+import io.github.pragwl.store.WriteBehindQueue;
 import io.github.pragwl.utility.ConsolePrinter;
-import io.github.pragwl.utility.FileUtility;
-import io.github.pragwl.utility.SerializationUtil;
+import io.github.pragwl.utility.Metrics;
 import io.github.pragwl.utility.Utility;
 import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Manages archived accounts. This class implements the Singleton pattern.
+ *
+ * <p>Archived accounts are not decrypted at startup. The manager only reads the keys and sizes of
+ * the archived records from the vault store index and decrypts records on demand, one page at a
+ * time when viewing or a single record when selecting by index. Decrypted records are kept in a
+ * bounded LRU cache.
+ *
+ * <p>Looking up accounts by name or id needs every archived record, so the first lookup decrypts
+ * the whole archive into the account index. The index is then kept up to date incrementally.
  */
+@Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class ArchivedAccountManager extends AccountManager {
 
+    private static final int PAGE_SIZE = Integer.getInteger("credvault.archive.page.size", 25);
+    private static final int CACHE_SIZE =
+            Math.max(PAGE_SIZE, Integer.getInteger("credvault.archive.cache.size", 256));
+    private static final Metrics.Counter CACHE_HITS =
+            Metrics.counter(
+                    "credvault_archive_cache_hits_total",
+                    "Archived account lookups served from the cache.");
+    private static final Metrics.Counter CACHE_MISSES =
+            Metrics.counter(
+                    "credvault_archive_cache_misses_total",
+                    "Archived account lookups that decrypted the record.");
+
+    static {
+        Metrics.gauge(
+                "credvault_archive_cache_hit_ratio",
+                "Share of archived account lookups served from the cache.",
+                () ->
+                        CACHE_HITS.get()
+                                / (double) Math.max(1, CACHE_HITS.get() + CACHE_MISSES.get()));
+    }
+
     private static ArchivedAccountManager archivedAccManager;
-    private final TreeSet<Account> archivedAccounts = initializeArchivedAccounts();
+    private final List<ArchiveEntry> archiveEntries = scanArchivedAccounts();
+    private AccountIndex accountIndex;
+    private final Map<String, Account> accountCache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Account> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
 
     /**
      * Retrieves the singleton instance of `ArchivedAccountManager`.
@@ -40,21 +81,16 @@ public class ArchivedAccountManager extends AccountManager {
         return archivedAccManager;
     }
 
-    private TreeSet<Account> initializeArchivedAccounts() {
-        List<String> archivedAccountNames =
-                FileUtility.getFilesListFromDirectory(AccountConfig.archiveAccountDirectory);
-        return archivedAccountNames.stream()
-                .map(
-                        accountName ->
-                                (Account)
-                                        SerializationUtil.deserializeObject(
-                                                AccountConfig.archiveAccountDirectory, accountName))
-                .collect(
-                        Collectors.toCollection(
-                                () ->
-                                        new TreeSet<>(
-                                                Comparator.comparing(Account::getCreatedOn)
-                                                        .thenComparing(Account::getVersion))));
+    private List<ArchiveEntry> scanArchivedAccounts() {
+        List<ArchiveEntry> entries =
+                VaultStore.getInstance().records(VaultStore.Section.ARCHIVED).stream()
+                        .map(record -> new ArchiveEntry(record.getKey(), record.getSize()))
+                        .collect(Collectors.toCollection(ArrayList::new));
+        log.info(
+                "Found {} archived records ({} bytes)",
+                entries.size(),
+                entries.stream().mapToLong(ArchiveEntry::getSize).sum());
+        return entries;
     }
 
     /**
@@ -65,7 +101,15 @@ public class ArchivedAccountManager extends AccountManager {
      */
     @Override
     public Account addAccount(Account account) {
-        archivedAccounts.add(account);
+        String key = Utility.getFileNameForAccountObject(account);
+        archiveEntries.removeIf(entry -> entry.getKey().equals(key));
+        archiveEntries.add(new ArchiveEntry(key, 0));
+        accountCache.put(key, account);
+        if (accountIndex != null) {
+            // Replace a previously archived copy of the same record
+            accountIndex.remove(account);
+            accountIndex.add(account);
+        }
         return account;
     }
 
@@ -76,30 +120,80 @@ public class ArchivedAccountManager extends AccountManager {
      */
     @Override
     public void deleteAccount(Account account) {
-        archivedAccounts.remove(account);
+        String key = Utility.getFileNameForAccountObject(account);
+        archiveEntries.removeIf(entry -> entry.getKey().equals(key));
+        accountCache.remove(key);
+        if (accountIndex != null) {
+            accountIndex.remove(account);
+        }
     }
 
     /**
-     * Displays a table of archived accounts.
+     * Displays the archived accounts page by page, decrypting only the records of the pages that
+     * are shown.
      */
     @Override
     public void viewAccounts() {
-        ConsolePrinter.printTable(
-                List.of(archivedAccounts.toArray()), List.of("serialVersionUID"));
+        if (archiveEntries.isEmpty()) {
+            ConsolePrinter.printWarningMessage("List is empty.");
+            return;
+        }
+
+        boolean nextPage = true;
+        for (int from = 0; nextPage && from < archiveEntries.size(); from += PAGE_SIZE) {
+            int to;
+            List<Account> page;
+            do {
+                // Unreadable records are dropped from the entries, so reload until the page is full
+                to = Math.min(from + PAGE_SIZE, archiveEntries.size());
+                page = loadRange(from, to);
+            } while (page.size() < to - from);
+            if (page.isEmpty()) {
+                break;
+            }
+            boolean hasMorePages = to < archiveEntries.size();
+            nextPage =
+                    ConsolePrinter.printTablePage(
+                            page, List.of("serialVersionUID"), from + 1, hasMorePages);
+        }
     }
 
     /**
-     * Retrieves an archived account by its index.
+     * Retrieves an archived account by its index, decrypting only that record if it is not cached.
      *
      * @param index The index of the account to retrieve.
-     * @return The account at the specified index, or `null` if the index is out of bounds.
+     * @return The account at the specified index, or `null` if the index is out of bounds or the
+     *     record cannot be read.
      */
     @Override
     public Account getAccountByIdx(int index) {
-        if (index < 0 || index >= archivedAccounts.size()) {
+        if (index < 0 || index >= archiveEntries.size()) {
             return null;
         }
-        return Utility.getValueAtIndex(archivedAccounts, index);
+        return getAccountByKey(archiveEntries.get(index).getKey());
+    }
+
+    /**
+     * Retrieves an archived account by its key in the vault, decrypting only that record if it is
+     * not cached.
+     *
+     * @param key The key of the archived record.
+     * @return The account, or `null` if the record does not exist or cannot be read.
+     */
+    public Account getAccountByKey(String key) {
+        Account account = accountCache.get(key);
+        if (account != null) {
+            CACHE_HITS.increment();
+        } else {
+            CACHE_MISSES.increment();
+            account =
+                    (Account)
+                            WriteBehindQueue.getInstance().read(VaultStore.Section.ARCHIVED, key);
+            if (account != null) {
+                accountCache.put(key, account);
+            }
+        }
+        return account;
     }
 
     /**
@@ -109,12 +203,80 @@ public class ArchivedAccountManager extends AccountManager {
      */
     @Override
     public boolean hasAccounts() {
-        return !archivedAccounts.isEmpty();
+        return !archiveEntries.isEmpty();
+    }
+
+    /**
+     * Retrieves the account index, decrypting all archived records into it on first use.
+     *
+     * @return The account index.
+     */
+    @Override
+    AccountIndex getAccountIndex() {
+        if (accountIndex == null) {
+            List<String> keys = archiveEntries.stream().map(ArchiveEntry::getKey).toList();
+            AccountLoader.LoadResult<Map<String, Account>> result =
+                    AccountLoader.loadByKey(VaultStore.Section.ARCHIVED, keys);
+            forgetFailures(result);
+            AccountIndex index = new AccountIndex(ACCOUNT_ORDER);
+            index.addAll(result.getAccounts().values());
+            accountIndex = index;
+        }
+        return accountIndex;
+    }
+
+    private List<Account> loadRange(int from, int to) {
+        List<String> missing =
+                archiveEntries.subList(from, to).stream()
+                        .map(ArchiveEntry::getKey)
+                        .filter(key -> !accountCache.containsKey(key))
+                        .collect(Collectors.toList());
+        CACHE_HITS.add(to - from - missing.size());
+        CACHE_MISSES.add(missing.size());
+        AccountLoader.LoadResult<Map<String, Account>> result =
+                AccountLoader.loadByKey(VaultStore.Section.ARCHIVED, missing);
+        Map<String, Account> loaded = result.getAccounts();
+
+        List<Account> page = new ArrayList<>(to - from);
+        for (ArchiveEntry entry : archiveEntries.subList(from, to)) {
+            Account account = loaded.get(entry.getKey());
+            if (account == null) {
+                account = accountCache.get(entry.getKey());
+            } else {
+                accountCache.put(entry.getKey(), account);
+            }
+            if (account != null) {
+                page.add(account);
+            }
+        }
+        forgetFailures(result);
+        return page;
+    }
+
+    private void forgetFailures(AccountLoader.LoadResult<?> result) {
+        // Keep row numbers aligned with getAccountByIdx by forgetting records that cannot be read
+        result.getFailures()
+                .forEach(
+                        failure ->
+                                archiveEntries.removeIf(
+                                        entry -> entry.getKey().equals(failure.getKey())));
+    }
+
+    /** An archived record known from the vault store index. */
+    @Getter
+    private static final class ArchiveEntry {
+        private final String key;
+        private final long size;
+
+        private ArchiveEntry(String key, long size) {
+            this.key = key;
+            this.size = size;
+        }
     }
 
     /**
-     * Configuration class for archived accounts. Defines the directory where archived accounts are
-     * stored.
+     * Configuration class for archived accounts. Defines the directory where archived accounts were
+     * stored before the vault store, read once during migration.
      */
     public static class AccountConfig {
         public static final String archiveAccountDirectory = "archived/";
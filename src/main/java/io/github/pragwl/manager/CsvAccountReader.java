@@ -0,0 +1,107 @@
+package io.github.pragwl.manager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads accounts from CSV. The first record is a header naming the {@code name}, {@code id} and
+ * {@code password} columns, in any order and case; other columns are ignored. Fields may be quoted
+ * with double quotes, in which case they can contain commas, line breaks and doubled quotes. Blank
+ * lines are skipped.
+ */
+final class CsvAccountReader implements AccountRowReader {
+
+    private final Reader reader;
+    private final int nameColumn;
+    private final int idColumn;
+    private final int passwordColumn;
+    private long rows;
+
+    /**
+     * Creates a reader and reads the header.
+     *
+     * @param reader The CSV input, ideally buffered.
+     * @throws IOException if the header cannot be read or lacks a required column.
+     */
+    CsvAccountReader(Reader reader) throws IOException {
+        this.reader = reader;
+        List<String> header = readRecord();
+        if (header == null) {
+            throw new IOException("The CSV file is empty.");
+        }
+        List<String> columns = header.stream().map(c -> c.trim().toLowerCase(Locale.ROOT)).toList();
+        nameColumn = columns.indexOf("name");
+        idColumn = columns.indexOf("id");
+        passwordColumn = columns.indexOf("password");
+        if (nameColumn < 0 || idColumn < 0 || passwordColumn < 0) {
+            throw new IOException("The CSV header must name the name, id and password columns.");
+        }
+    }
+
+    @Override
+    public Row next() throws IOException {
+        List<String> fields;
+        do {
+            fields = readRecord();
+            if (fields == null) {
+                return null;
+            }
+        } while (fields.size() == 1 && fields.get(0).isBlank());
+        rows++;
+        return new Row(
+                rows,
+                field(fields, nameColumn),
+                field(fields, idColumn),
+                field(fields, passwordColumn));
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static String field(List<String> fields, int column) {
+        return column < fields.size() ? fields.get(column) : null;
+    }
+
+    /** Reads the fields of the next record, or returns `null` at the end of the input. */
+    private List<String> readRecord() throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field after row " + rows + ".");
+                }
+                if (c == '"') {
+                    c = reader.read();
+                    if (c != '"') {
+                        // Closing quote, the character after it is handled unquoted
+                        quoted = false;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                fields.add(field.toString());
+                return fields;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+}
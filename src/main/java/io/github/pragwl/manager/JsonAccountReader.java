@@ -0,0 +1,79 @@
+package io.github.pragwl.manager;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Reads accounts from a JSON array of objects with {@code name}, {@code id} and {@code password}
+ * fields. Other fields are ignored. The array is parsed as a token stream, one object at a time.
+ */
+final class JsonAccountReader implements AccountRowReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonParser parser;
+    private long rows;
+
+    /**
+     * Creates a reader and reads up to the start of the array.
+     *
+     * @param reader The JSON input.
+     * @throws IOException if the input does not start with an array.
+     */
+    JsonAccountReader(Reader reader) throws IOException {
+        parser = JSON_FACTORY.createParser(reader);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("The JSON file must hold an array of accounts.");
+        }
+    }
+
+    @Override
+    public Row next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException(
+                    "Expected an account object at " + parser.currentTokenLocation() + ".");
+        }
+        rows++;
+        String name = null;
+        String id = null;
+        String password = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName().toLowerCase(Locale.ROOT);
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                continue;
+            }
+            String text = value == JsonToken.VALUE_NULL ? null : parser.getText();
+            switch (fieldName) {
+                case "name":
+                    name = text;
+                    break;
+                case "id":
+                    id = text;
+                    break;
+                case "password":
+                    password = text;
+                    break;
+                default:
+                    // Not part of an account
+                    break;
+            }
+        }
+        return new Row(rows, name, id, password);
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
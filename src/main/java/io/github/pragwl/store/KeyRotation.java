@@ -0,0 +1,295 @@
+package io.github.pragwl.store;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Serial;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import io.github.pragwl.utility.EncryptionUtility;
+import io.github.pragwl.utility.MasterKey;
+import io.github.pragwl.utility.OrderedWorkers;
+import io.github.pragwl.utility.SerializationUtil;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rotates the vault encryption key by re-encrypting every live record into a new log.
+ *
+ * <p>Records flow through {@link OrderedWorkers} named {@code rotate}: worker threads read a
+ * record, decrypt it with the current key and encrypt it with the new key, while a single writer
+ * appends the results in order to a temporary log.
+ *
+ * <p>Progress is checkpointed regularly, so an interrupted rotation resumes where it stopped when
+ * it is run again. Once all records are written, the temporary log replaces the vault log, and the
+ * new key and its master key derivation parameters replace {@code config/encflekey.txt} and {@code
+ * config/encflekey.txt.kdf}, each with an atomic move. The new parameters use the currently
+ * configured {@code credvault.kdf.iterations}, so rotating is also how the KDF cost is changed.
+ * While a rotation is unfinished the vault must not be opened by the application, see {@link
+ * #isInProgress()}; while it runs, the lock of the {@link VaultStore} keeps other processes out.
+ *
+ * <p>If any record cannot be decrypted with the current key, the rotation is abandoned and the
+ * current key stays in place, since the record could never be read again under the new key.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class KeyRotation {
+
+    private static final int CHECKPOINT_INTERVAL_RECORDS = 1024;
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final Path NEW_KEY_PATH =
+            Paths.get(SerializationUtil.ENCRYPTION_KEY_DIR + ".new");
+    private static final Path NEW_KDF_PARAMETERS_PATH =
+            Paths.get(SerializationUtil.KDF_PARAMETERS_DIR + ".new");
+
+    /**
+     * Checks whether a rotation was started and has not finished yet.
+     *
+     * @return `true` if a rotation checkpoint exists.
+     */
+    public static boolean isInProgress() {
+        return Files.exists(
+                Paths.get(
+                        VaultStore.StoreConfig.vaultDirectory,
+                        VaultStore.StoreConfig.logFileName + ".rotate.checkpoint"));
+    }
+
+    /**
+     * Rotates the vault encryption key, or resumes an interrupted rotation.
+     *
+     * @param newKeyFile A file holding the new key, or `null` to generate one. Ignored when
+     *     resuming, since the rotation continues with the key it started with.
+     * @throws IOException if reading or writing the vault fails.
+     * @throws IllegalStateException if the rotation is interrupted or a worker fails.
+     */
+    public static void rotate(String newKeyFile) throws IOException {
+        VaultStore store = VaultStore.getInstance();
+        Path logPath = store.getLogPath();
+        Path rotatedPath = logPath.resolveSibling(logPath.getFileName() + ".rotate");
+        Path checkpointPath = logPath.resolveSibling(logPath.getFileName() + ".rotate.checkpoint");
+
+        Checkpoint checkpoint = Checkpoint.load(checkpointPath);
+        if (checkpoint != null
+                && !checkpoint.complete
+                && checkpoint.sourceLength != store.getLogLength()) {
+            log.warn("Vault log changed since the rotation was interrupted. Starting over.");
+            checkpoint = null;
+        }
+        if (checkpoint == null) {
+            String newKey =
+                    newKeyFile != null
+                            ? Files.readString(Paths.get(newKeyFile))
+                            : EncryptionUtility.generateEncryptionKey(256);
+            Files.createDirectories(NEW_KEY_PATH.getParent());
+            Files.writeString(NEW_KEY_PATH, newKey);
+            // New key derivation parameters, with the currently configured iteration count
+            Files.deleteIfExists(NEW_KDF_PARAMETERS_PATH);
+            checkpoint = new Checkpoint(store.getLogLength(), 0, VaultStore.HEADER_LENGTH, false);
+            checkpoint.save(checkpointPath);
+        } else if (newKeyFile != null) {
+            log.warn("Resuming the interrupted rotation with its key. {} is ignored.", newKeyFile);
+        }
+
+        if (!checkpoint.complete) {
+            MasterKey newMasterKey =
+                    MasterKey.unlock(Files.readString(NEW_KEY_PATH), NEW_KDF_PARAMETERS_PATH);
+            try {
+                reencryptAll(store, rotatedPath, checkpointPath, checkpoint, newMasterKey);
+            } catch (UnreadableRecordException e) {
+                // Resuming would fail on the same record, and replacing the key would lose it
+                abandon(rotatedPath, checkpointPath);
+                throw new IllegalStateException(
+                        "Key rotation aborted, the vault still uses its current key: "
+                                + e.getMessage(),
+                        e);
+            }
+        }
+
+        if (Files.exists(rotatedPath)) {
+            store.replaceLog(rotatedPath);
+        }
+        if (Files.exists(NEW_KDF_PARAMETERS_PATH)) {
+            Files.move(
+                    NEW_KDF_PARAMETERS_PATH,
+                    Paths.get(SerializationUtil.KDF_PARAMETERS_DIR),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        if (Files.exists(NEW_KEY_PATH)) {
+            Files.move(
+                    NEW_KEY_PATH,
+                    Paths.get(SerializationUtil.ENCRYPTION_KEY_DIR),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.deleteIfExists(checkpointPath);
+        log.info(
+                "Rotated the vault encryption key. {} holds the new key.",
+                SerializationUtil.ENCRYPTION_KEY_DIR);
+    }
+
+    private static void reencryptAll(
+            VaultStore store,
+            Path rotatedPath,
+            Path checkpointPath,
+            Checkpoint checkpoint,
+            MasterKey newMasterKey)
+            throws IOException {
+        List<RecordKey> records = new ArrayList<>();
+        for (VaultStore.Section section : VaultStore.Section.values()) {
+            store.keys(section).forEach(key -> records.add(new RecordKey(section, key)));
+        }
+
+        // Resume only if the new log still holds everything the checkpoint covers
+        boolean resume =
+                checkpoint.records > 0
+                        && Files.exists(rotatedPath)
+                        && Files.size(rotatedPath) >= checkpoint.length;
+        int resumedAt = resume ? checkpoint.records : 0;
+        int done = resumedAt;
+        try (OrderedWorkers<ByteBuffer> workers = new OrderedWorkers<>("rotate", 8);
+                FileChannel target = VaultStore.openLog(rotatedPath, !resume)) {
+            long position = resume ? checkpoint.length : VaultStore.HEADER_LENGTH;
+            target.truncate(position);
+            long lastCheckpoint = System.nanoTime();
+            int next = done;
+
+            while (done < records.size()) {
+                while (next < records.size() && !workers.isFull()) {
+                    RecordKey record = records.get(next++);
+                    workers.submit(() -> reencrypt(store, record, newMasterKey));
+                }
+                position += VaultStore.writeFully(target, workers.take(), position);
+                done++;
+
+                if (done % CHECKPOINT_INTERVAL_RECORDS == 0
+                        || System.nanoTime() - lastCheckpoint > CHECKPOINT_INTERVAL_NANOS) {
+                    target.force(false);
+                    new Checkpoint(checkpoint.sourceLength, done, position, false)
+                            .save(checkpointPath);
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+            target.force(true);
+            new Checkpoint(checkpoint.sourceLength, done, position, true).save(checkpointPath);
+            workers.logFinished(
+                    "Re-encrypted " + (done - resumedAt) + " records",
+                    done - resumedAt,
+                    "records");
+        }
+    }
+
+    /**
+     * Re-encrypts one record. A record that cannot be decrypted with the current key fails the
+     * rotation, since it could never be read again once the key is replaced.
+     */
+    private static ByteBuffer reencrypt(VaultStore store, RecordKey record, MasterKey newMasterKey)
+            throws IOException {
+        byte[] encrypted = store.readEncrypted(record.getSection(), record.getKey());
+        if (encrypted == null) {
+            throw new IllegalStateException("Record disappeared: " + record);
+        }
+        byte[] payload;
+        try {
+            payload = SerializationUtil.reencryptBuffer(ByteBuffer.wrap(encrypted), newMasterKey);
+        } catch (RuntimeException e) {
+            log.error("Failed to re-encrypt {}: {}", record, e.getMessage());
+            throw new UnreadableRecordException(
+                    "record " + record + " cannot be re-encrypted: " + e.getMessage(), e);
+        }
+        return VaultStore.encodePut(record.getSection(), record.getKey(), payload);
+    }
+
+    /** Removes the new log, key and checkpoint of a rotation that cannot complete. */
+    private static void abandon(Path rotatedPath, Path checkpointPath) throws IOException {
+        Files.deleteIfExists(checkpointPath);
+        Files.deleteIfExists(rotatedPath);
+        Files.deleteIfExists(NEW_KDF_PARAMETERS_PATH);
+        Files.deleteIfExists(NEW_KEY_PATH);
+    }
+
+    /** A record could not be decrypted with the current key, so the rotation cannot complete. */
+    private static final class UnreadableRecordException extends IllegalStateException {
+        @Serial private static final long serialVersionUID = 1L;
+
+        private UnreadableRecordException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /** A live record of the vault, identified by section and key. */
+    @Getter
+    private static final class RecordKey {
+        private final VaultStore.Section section;
+        private final String key;
+
+        private RecordKey(VaultStore.Section section, String key) {
+            this.section = section;
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return section + "/" + key;
+        }
+    }
+
+    /** Rotation progress: records written to the new log and its length at that point. */
+    private static final class Checkpoint {
+        private final long sourceLength;
+        private final int records;
+        private final long length;
+        private final boolean complete;
+
+        private Checkpoint(long sourceLength, int records, long length, boolean complete) {
+            this.sourceLength = sourceLength;
+            this.records = records;
+            this.length = length;
+            this.complete = complete;
+        }
+
+        private static Checkpoint load(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(path)) {
+                properties.load(reader);
+            }
+            return new Checkpoint(
+                    Long.parseLong(properties.getProperty("sourceLength")),
+                    Integer.parseInt(properties.getProperty("records")),
+                    Long.parseLong(properties.getProperty("length")),
+                    Boolean.parseBoolean(properties.getProperty("complete")));
+        }
+
+        /** Writes the checkpoint to a temporary file and moves it into place. */
+        private void save(Path path) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("sourceLength", Long.toString(sourceLength));
+            properties.setProperty("records", Integer.toString(records));
+            properties.setProperty("length", Long.toString(length));
+            properties.setProperty("complete", Boolean.toString(complete));
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempPath)) {
+                properties.store(writer, "Vault key rotation checkpoint");
+            }
+            Files.move(
+                    tempPath,
+                    path,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.pragwl.store;
+
+/**
+ * Collects puts and deletes of vault records that are stored together, either directly as a {@link
+ * VaultStore.Transaction} or later as a {@link WriteBehindQueue.Batch}.
+ */
+public interface RecordWriter {
+
+    /**
+     * Adds a put of an object under the given key.
+     *
+     * @param section The section the record belongs to.
+     * @param key The key of the record.
+     * @param obj The object to store.
+     * @return This writer.
+     */
+    RecordWriter put(VaultStore.Section section, String key, Object obj);
+
+    /**
+     * Adds a delete of the given key.
+     *
+     * @param section The section the record belongs to.
+     * @param key The key of the record.
+     * @return This writer.
+     */
+    RecordWriter delete(VaultStore.Section section, String key);
+}
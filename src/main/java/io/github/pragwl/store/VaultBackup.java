@@ -0,0 +1,722 @@
+package io.github.pragwl.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import io.github.pragwl.utility.CryptoPool;
+import io.github.pragwl.utility.EncryptionUtility;
+import io.github.pragwl.utility.OrderedWorkers;
+import io.github.pragwl.utility.SerializationUtil;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exports every live record of the vault into a single compressed, encrypted archive, backs the
+ * vault up incrementally into a directory of such archives, and restores either into the vault.
+ *
+ * <p>Archive layout: a header {@code [magic: 4][version: 1][salt length: 1][salt]} followed by
+ * chunks {@code [int length][flags: 1][iv: 12][ciphertext and tag]}. A chunk holds the records of
+ * about {@code credvault.backup.chunk.size} bytes of the vault, each as {@code [section: 1][kind:
+ * 1][short key length][key][int length][data]}, compressed with Deflate and sealed with AES-GCM
+ * under a key derived from the vault encryption key and the archive salt. Records are stored
+ * decrypted inside the sealed chunk, so they compress, except records that cannot be decrypted,
+ * which are carried over as they are. The header, the chunk number and the flags are authenticated
+ * with every chunk, and the last chunk is flagged, so reordered, dropped or truncated chunks are
+ * detected.
+ *
+ * <p>A backup directory holds numbered snapshot archives and a manifest with a SHA-256 hash of
+ * every record as of the latest snapshot. Each snapshot after the first holds only the records
+ * whose hash changed, and an empty entry of kind {@code 2} for every removed record, so restoring
+ * the snapshots in order rebuilds the vault as of the latest one. The manifest also holds a
+ * fingerprint of the encryption key: after a key rotation, the next snapshot is a full one that
+ * starts a new chain, and a restore replays the snapshots from the start of the latest chain, since
+ * older ones can only be opened with the old key.
+ *
+ * <p>Chunks are built and, on restore, verified and re-encrypted on worker threads, while the
+ * calling thread writes them in order, through {@link OrderedWorkers} named {@code backup}; no
+ * account is deserialized. An archive can only be restored with the encryption key it was exported
+ * with.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class VaultBackup {
+
+    private static final int CHUNK_SIZE =
+            Math.max(4096, Integer.getInteger("credvault.backup.chunk.size", 1024 * 1024));
+    private static final int MAX_FRAME_LENGTH = 256 * 1024 * 1024;
+
+    private static final int MAGIC = 0x43564152; // "CVAR"
+    private static final byte FORMAT_VERSION = 2;
+    private static final int SALT_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final byte FLAG_LAST = 1;
+    private static final byte DECRYPTED = 0;
+    private static final byte ENCRYPTED = 1;
+    private static final byte DELETED = 2;
+    private static final String MANIFEST_FILE_NAME = "manifest";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Exports every live record of the vault into an archive. The archive is written to a temporary
+     * file and moved into place once complete.
+     *
+     * @param target The archive to write. An existing file is replaced.
+     * @return The number of exported records and the size of the archive.
+     * @throws IOException if reading the vault or writing the archive fails.
+     * @throws IllegalStateException if the export is interrupted or a worker fails.
+     */
+    public static Result export(Path target) throws IOException {
+        VaultStore store = VaultStore.getInstance();
+        return writeArchive(store, liveRecords(store), target, "Exported");
+    }
+
+    /**
+     * Adds a snapshot to a backup directory. The first snapshot holds every live record; each
+     * later one holds only the records added, changed or removed since the previous snapshot,
+     * according to the manifest of record hashes kept in the directory. The manifest is replaced
+     * only once the snapshot is complete, so an interrupted backup is redone by the next one.
+     *
+     * <p>Records are compared by a hash of their encrypted payload, so nothing is decrypted to find
+     * the changes. Records re-encrypted by a key rotation or a format upgrade count as changed.
+     *
+     * @param directory The backup directory, created if needed.
+     * @return The number of records in the snapshot and its size.
+     * @throws IOException if reading the vault or writing the backup fails.
+     * @throws IllegalStateException if the backup is interrupted or a worker fails.
+     */
+    public static Result backup(Path directory) throws IOException {
+        VaultStore store = VaultStore.getInstance();
+        Files.createDirectories(directory);
+        Path manifestPath = directory.resolve(MANIFEST_FILE_NAME);
+        Manifest previous = Manifest.load(manifestPath);
+        String keyFingerprint = SerializationUtil.keyFingerprint();
+        int snapshot = previous.snapshot + 1;
+        int chainStart = previous.chainStart;
+        if (!keyFingerprint.equals(previous.keyFingerprint)) {
+            if (previous.snapshot > 0) {
+                log.info("The encryption key changed, so snapshot {} starts a new chain", snapshot);
+            }
+            // A full snapshot, which a restore can start from with the current key
+            previous = new Manifest(previous.snapshot, previous.chainStart, null, Map.of());
+            chainStart = snapshot;
+        }
+
+        Map<RecordKey, byte[]> hashes = new HashMap<>();
+        List<RecordKey> changed = new ArrayList<>();
+        for (RecordKey record : liveRecords(store)) {
+            byte[] encrypted = store.readEncrypted(record.section, record.key);
+            if (encrypted == null) {
+                continue;
+            }
+            byte[] hash = sha256(encrypted);
+            hashes.put(record, hash);
+            if (!Arrays.equals(hash, previous.hashes.get(record))) {
+                changed.add(record);
+            }
+        }
+        for (RecordKey record : previous.hashes.keySet()) {
+            if (!hashes.containsKey(record)) {
+                changed.add(record.deleted());
+            }
+        }
+
+        Path target = directory.resolve(snapshotFileName(snapshot));
+        Result result = writeArchive(store, changed, target, "Backed up");
+        new Manifest(snapshot, chainStart, keyFingerprint, hashes).save(manifestPath);
+        log.info(
+                "Snapshot {} of {} holds {} of {} records",
+                snapshot,
+                directory,
+                changed.size(),
+                hashes.size());
+        return result;
+    }
+
+    /**
+     * Verifies an archive, or the snapshots of the latest chain of a backup directory in order, and
+     * restores the records into the vault in a single transaction, replacing records with the same
+     * key and removing records a snapshot recorded as removed. Nothing is restored if any chunk
+     * fails verification.
+     *
+     * @param source The archive or backup directory to restore.
+     * @return The number of restored records and the size of the archives.
+     * @throws IOException if an archive cannot be read, is truncated or fails verification, or a
+     *     snapshot of a backup directory is missing or was written with another encryption key.
+     * @throws IllegalStateException if the restore is interrupted or a worker fails.
+     * @throws RuntimeException if writing the vault fails. Nothing is restored then.
+     */
+    public static Result restore(Path source) throws IOException {
+        List<Path> archives = Files.isDirectory(source) ? snapshots(source) : List.of(source);
+        VaultStore store = VaultStore.getInstance();
+        try (OrderedWorkers<RestoredChunk> workers = new OrderedWorkers<>("backup", 2);
+                VaultStore.BulkTransaction transaction = store.beginBulk()) {
+            Progress progress = new Progress("Restored", workers);
+            for (Path archive : archives) {
+                restoreArchive(archive, transaction, workers, progress);
+            }
+            transaction.commit();
+            return progress.finish("from", source);
+        }
+    }
+
+    private static Result writeArchive(
+            VaultStore store, List<RecordKey> records, Path target, String action)
+            throws IOException {
+        List<List<RecordKey>> chunks = planChunks(records);
+        byte[] salt = EncryptionUtility.generateSalt(SALT_LENGTH);
+        byte[] header = header(salt);
+        Path tempPath = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (OrderedWorkers<SealedChunk> workers = new OrderedWorkers<>("backup", 2)) {
+            Progress progress = new Progress(action, workers);
+            try (FileChannel channel =
+                    FileChannel.open(
+                            tempPath,
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.WRITE)) {
+                long position = VaultStore.writeFully(channel, ByteBuffer.wrap(header), 0);
+                int next = 0;
+                while (next < chunks.size() || !workers.isEmpty()) {
+                    while (next < chunks.size() && !workers.isFull()) {
+                        long number = next;
+                        List<RecordKey> chunk = chunks.get(next++);
+                        boolean last = next == chunks.size();
+                        workers.submit(() -> sealChunk(store, chunk, number, last, header, salt));
+                    }
+                    SealedChunk chunk = workers.take();
+                    position += VaultStore.writeFully(channel, chunk.frame, position);
+                    progress.add(chunk.records, chunk.frame.capacity());
+                }
+                channel.force(true);
+            }
+            Files.move(
+                    tempPath,
+                    target,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return progress.finish("to", target);
+        }
+    }
+
+    private static void restoreArchive(
+            Path source,
+            VaultStore.BulkTransaction transaction,
+            OrderedWorkers<RestoredChunk> workers,
+            Progress progress)
+            throws IOException {
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            byte[] header = readHeader(in);
+            byte[] salt = Arrays.copyOfRange(header, header.length - SALT_LENGTH, header.length);
+            long next = 0;
+            boolean lastRead = false;
+            boolean endOfInput = false;
+            while (true) {
+                while (!endOfInput && !workers.isFull()) {
+                    byte[] frame = readFrame(in);
+                    if (frame == null) {
+                        endOfInput = true;
+                    } else if (lastRead) {
+                        throw new IOException(source + " has data after its last chunk.");
+                    } else {
+                        lastRead = (frame[0] & FLAG_LAST) != 0;
+                        long number = next++;
+                        workers.submit(() -> openChunk(frame, number, header, salt));
+                    }
+                }
+                if (workers.isEmpty()) {
+                    break;
+                }
+                RestoredChunk chunk = workers.take();
+                for (RestoredRecord record : chunk.records) {
+                    if (record.payload == null) {
+                        transaction.delete(record.section, record.key);
+                    } else {
+                        transaction.putEncrypted(record.section, record.key, record.payload);
+                    }
+                }
+                progress.add(chunk.records.size(), chunk.frameLength);
+            }
+            if (!lastRead) {
+                throw new IOException(source + " is truncated.");
+            }
+        }
+    }
+
+    /** Lists the live records of every section with their encrypted sizes. */
+    private static List<RecordKey> liveRecords(VaultStore store) {
+        List<RecordKey> records = new ArrayList<>();
+        for (VaultStore.Section section : VaultStore.Section.values()) {
+            for (VaultStore.RecordInfo record : store.records(section)) {
+                records.add(new RecordKey(section, record.getKey(), record.getSize(), false));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Lists the snapshots of the latest chain of a backup directory in order, checking that none is
+     * missing and that they were written with the current encryption key.
+     */
+    private static List<Path> snapshots(Path directory) throws IOException {
+        Manifest manifest = Manifest.load(directory.resolve(MANIFEST_FILE_NAME));
+        int count = manifest.snapshot;
+        if (count == 0) {
+            throw new IOException(directory + " holds no backup.");
+        }
+        if (manifest.keyFingerprint != null
+                && !manifest.keyFingerprint.equals(SerializationUtil.keyFingerprint())) {
+            throw new IOException(
+                    directory + " was backed up with another encryption key than the current one.");
+        }
+        List<Path> snapshots = new ArrayList<>(count - manifest.chainStart + 1);
+        for (int snapshot = manifest.chainStart; snapshot <= count; snapshot++) {
+            Path path = directory.resolve(snapshotFileName(snapshot));
+            if (!Files.exists(path)) {
+                throw new IOException("Snapshot " + snapshot + " is missing from " + directory);
+            }
+            snapshots.add(path);
+        }
+        return snapshots;
+    }
+
+    private static String snapshotFileName(int snapshot) {
+        return String.format("snapshot-%08d.cva", snapshot);
+    }
+
+    /** Groups records into chunks of about {@link #CHUNK_SIZE} encrypted bytes. */
+    private static List<List<RecordKey>> planChunks(List<RecordKey> records) {
+        List<List<RecordKey>> chunks = new ArrayList<>();
+        List<RecordKey> chunk = new ArrayList<>();
+        long chunkBytes = 0;
+        for (RecordKey record : records) {
+            chunk.add(record);
+            chunkBytes += record.size;
+            if (chunkBytes >= CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+                chunkBytes = 0;
+            }
+        }
+        if (!chunk.isEmpty() || chunks.isEmpty()) {
+            // An empty archive still gets a last chunk, so it is complete
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static SealedChunk sealChunk(
+            VaultStore store,
+            List<RecordKey> records,
+            long number,
+            boolean last,
+            byte[] header,
+            byte[] salt)
+            throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(CHUNK_SIZE / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        int written = 0;
+        try (DataOutputStream out =
+                new DataOutputStream(new DeflaterOutputStream(compressed, deflater))) {
+            for (RecordKey record : records) {
+                if (record.deleted) {
+                    writeEntry(out, record, DELETED, new byte[0]);
+                    written++;
+                    continue;
+                }
+                byte[] encrypted = store.readEncrypted(record.section, record.key);
+                if (encrypted == null) {
+                    // Deleted since the chunks were planned
+                    continue;
+                }
+                byte kind = DECRYPTED;
+                byte[] data;
+                try {
+                    data = SerializationUtil.decryptToBytes(ByteBuffer.wrap(encrypted));
+                } catch (RuntimeException e) {
+                    log.error("Exporting {} as stored: {}", record, e.getMessage());
+                    kind = ENCRYPTED;
+                    data = encrypted;
+                }
+                try {
+                    writeEntry(out, record, kind, data);
+                } finally {
+                    Arrays.fill(data, (byte) 0);
+                }
+                written++;
+            }
+        } finally {
+            deflater.end();
+        }
+
+        byte flags = last ? FLAG_LAST : 0;
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        byte[] sealed =
+                SerializationUtil.seal(
+                        compressed.toByteArray(),
+                        iv,
+                        associatedData(header, number, flags),
+                        salt);
+        ByteBuffer frame = ByteBuffer.allocate(4 + 1 + IV_LENGTH + sealed.length);
+        frame.putInt(1 + IV_LENGTH + sealed.length).put(flags).put(iv).put(sealed);
+        return new SealedChunk(frame.flip(), written);
+    }
+
+    private static void writeEntry(DataOutputStream out, RecordKey record, byte kind, byte[] data)
+            throws IOException {
+        byte[] keyBytes = record.key.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(record.section.getId());
+        out.writeByte(kind);
+        out.writeShort(keyBytes.length);
+        out.write(keyBytes);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static RestoredChunk openChunk(byte[] frame, long number, byte[] header, byte[] salt)
+            throws IOException {
+        byte flags = frame[0];
+        byte[] iv = Arrays.copyOfRange(frame, 1, 1 + IV_LENGTH);
+        byte[] sealed = Arrays.copyOfRange(frame, 1 + IV_LENGTH, frame.length);
+        byte[] compressed;
+        try {
+            compressed =
+                    SerializationUtil.open(
+                            sealed, iv, associatedData(header, number, flags), salt);
+        } catch (RuntimeException e) {
+            throw new IOException("Chunk " + number + " failed verification.", e);
+        }
+
+        List<RestoredRecord> records = new ArrayList<>();
+        try (DataInputStream in =
+                new DataInputStream(
+                        new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+            int sectionId;
+            while ((sectionId = in.read()) != -1) {
+                VaultStore.Section section = VaultStore.Section.fromId((byte) sectionId);
+                byte kind = in.readByte();
+                String key =
+                        new String(
+                                in.readNBytes(in.readUnsignedShort()), StandardCharsets.UTF_8);
+                byte[] data = in.readNBytes(in.readInt());
+                try {
+                    byte[] payload;
+                    if (kind == DELETED) {
+                        payload = null;
+                    } else if (kind == ENCRYPTED) {
+                        payload = data.clone();
+                    } else {
+                        payload = SerializationUtil.encryptBytes(data);
+                    }
+                    records.add(new RestoredRecord(section, key, payload));
+                } finally {
+                    Arrays.fill(data, (byte) 0);
+                }
+            }
+        } catch (EOFException | IllegalArgumentException e) {
+            throw new IOException("Chunk " + number + " is malformed.", e);
+        } finally {
+            Arrays.fill(compressed, (byte) 0);
+        }
+        return new RestoredChunk(records, 4 + frame.length);
+    }
+
+    private static byte[] header(byte[] salt) {
+        return ByteBuffer.allocate(4 + 1 + 1 + salt.length)
+                .putInt(MAGIC)
+                .put(FORMAT_VERSION)
+                .put((byte) salt.length)
+                .put(salt)
+                .array();
+    }
+
+    private static byte[] readHeader(InputStream in) throws IOException {
+        byte[] header = in.readNBytes(4 + 1 + 1 + SALT_LENGTH);
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        if (header.length < 4 + 1 + 1 + SALT_LENGTH
+                || buffer.getInt() != MAGIC
+                || buffer.get() > FORMAT_VERSION
+                || buffer.get() != SALT_LENGTH) {
+            throw new IOException("Not a vault archive of a supported version.");
+        }
+        return header;
+    }
+
+    /** Reads the next chunk without its length, or returns `null` at the end of the archive. */
+    private static byte[] readFrame(InputStream in) throws IOException {
+        byte[] lengthBytes = in.readNBytes(4);
+        if (lengthBytes.length == 0) {
+            return null;
+        }
+        if (lengthBytes.length < 4) {
+            throw new IOException("The archive is truncated.");
+        }
+        int length = ByteBuffer.wrap(lengthBytes).getInt();
+        if (length < 1 + IV_LENGTH + TAG_LENGTH || length > MAX_FRAME_LENGTH) {
+            throw new IOException("The archive has a malformed chunk.");
+        }
+        byte[] frame = in.readNBytes(length);
+        if (frame.length < length) {
+            throw new IOException("The archive is truncated.");
+        }
+        return frame;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return CryptoPool.sha256().digest(data);
+    }
+
+    private static byte[] associatedData(byte[] header, long number, byte flags) {
+        return ByteBuffer.allocate(header.length + 8 + 1)
+                .put(header)
+                .putLong(number)
+                .put(flags)
+                .array();
+    }
+
+    /** The outcome of an export or restore. */
+    @Getter
+    public static final class Result {
+        private final int records;
+        private final long archiveBytes;
+        private final long elapsedMillis;
+
+        private Result(int records, long archiveBytes, long elapsedMillis) {
+            this.records = records;
+            this.archiveBytes = archiveBytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * Returns the throughput over the archive.
+         *
+         * @return Archive bytes per second.
+         */
+        public long getBytesPerSecond() {
+            return archiveBytes * 1000L / Math.max(1, elapsedMillis);
+        }
+    }
+
+    /** Counts the records and archive bytes processed by a pipeline. */
+    private static final class Progress {
+        private final String action;
+        private final OrderedWorkers<?> workers;
+        private int records;
+        private long bytes;
+
+        private Progress(String action, OrderedWorkers<?> workers) {
+            this.action = action;
+            this.workers = workers;
+        }
+
+        private void add(int chunkRecords, long chunkBytes) {
+            records += chunkRecords;
+            bytes += chunkBytes;
+            workers.logProgress(action, records, "records");
+        }
+
+        private Result finish(String preposition, Path archive) {
+            long elapsedMillis =
+                    workers.logFinished(
+                            action
+                                    + " "
+                                    + records
+                                    + " records, "
+                                    + bytes
+                                    + " archive bytes, "
+                                    + preposition
+                                    + " "
+                                    + archive,
+                            bytes,
+                            "bytes");
+            return new Result(records, bytes, elapsedMillis);
+        }
+    }
+
+    /**
+     * A record chosen for an archive, with its encrypted size, or the removal of a record. Equal
+     * records have the same section and key.
+     */
+    private static final class RecordKey {
+        private final VaultStore.Section section;
+        private final String key;
+        private final long size;
+        private final boolean deleted;
+
+        private RecordKey(VaultStore.Section section, String key, long size, boolean deleted) {
+            this.section = section;
+            this.key = key;
+            this.size = size;
+            this.deleted = deleted;
+        }
+
+        private RecordKey deleted() {
+            return new RecordKey(section, key, key.length(), true);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof RecordKey record
+                    && section == record.section
+                    && key.equals(record.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * section.hashCode() + key.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return section + "/" + key;
+        }
+    }
+
+    /**
+     * The hashes of the records in the latest snapshot of a backup directory. Layout: {@code
+     * [magic: 4][snapshot: 4][count: 4]} followed by {@code [section: 1][key: UTF][hash: 32]} per
+     * record.
+     */
+    private static final class Manifest {
+        private static final int LEGACY_MANIFEST_MAGIC = 0x4356424D; // "CVBM"
+        private static final int MANIFEST_MAGIC = 0x4356424E; // "CVBN"
+        private static final int HASH_LENGTH = 32;
+
+        private final int snapshot;
+        /** The first snapshot of the latest chain, a full snapshot written with its key. */
+        private final int chainStart;
+        /** The fingerprint of the key of the latest chain, `null` if unknown. */
+        private final String keyFingerprint;
+        private final Map<RecordKey, byte[]> hashes;
+
+        private Manifest(
+                int snapshot,
+                int chainStart,
+                String keyFingerprint,
+                Map<RecordKey, byte[]> hashes) {
+            this.snapshot = snapshot;
+            this.chainStart = chainStart;
+            this.keyFingerprint = keyFingerprint;
+            this.hashes = hashes;
+        }
+
+        private static Manifest load(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return new Manifest(0, 1, null, Map.of());
+            }
+            try (DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                int magic = in.readInt();
+                if (magic != MANIFEST_MAGIC && magic != LEGACY_MANIFEST_MAGIC) {
+                    throw new IOException("Not a backup manifest: " + path);
+                }
+                int snapshot = in.readInt();
+                // Manifests written before key fingerprints have a single chain with an unknown key
+                int chainStart = magic == MANIFEST_MAGIC ? in.readInt() : 1;
+                String keyFingerprint = magic == MANIFEST_MAGIC ? in.readUTF() : null;
+                if (chainStart < 1 || chainStart > Math.max(1, snapshot)) {
+                    throw new IllegalArgumentException("Chain start out of range: " + chainStart);
+                }
+                int count = in.readInt();
+                Map<RecordKey, byte[]> hashes = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    VaultStore.Section section = VaultStore.Section.fromId(in.readByte());
+                    String key = in.readUTF();
+                    byte[] hash = new byte[HASH_LENGTH];
+                    in.readFully(hash);
+                    hashes.put(new RecordKey(section, key, 0, false), hash);
+                }
+                return new Manifest(snapshot, chainStart, keyFingerprint, hashes);
+            } catch (EOFException | IllegalArgumentException e) {
+                throw new IOException("Malformed backup manifest: " + path, e);
+            }
+        }
+
+        /** Writes the manifest to a temporary file and moves it into place. */
+        private void save(Path path) throws IOException {
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out =
+                    new DataOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeInt(snapshot);
+                out.writeInt(chainStart);
+                out.writeUTF(keyFingerprint);
+                out.writeInt(hashes.size());
+                for (Map.Entry<RecordKey, byte[]> entry : hashes.entrySet()) {
+                    out.writeByte(entry.getKey().section.getId());
+                    out.writeUTF(entry.getKey().key);
+                    out.write(entry.getValue());
+                }
+            }
+            Files.move(
+                    tempPath,
+                    path,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** A chunk ready to be appended to the archive. */
+    private static final class SealedChunk {
+        private final ByteBuffer frame;
+        private final int records;
+
+        private SealedChunk(ByteBuffer frame, int records) {
+            this.frame = frame;
+            this.records = records;
+        }
+    }
+
+    /** The records of a verified chunk and the length of the chunk in the archive. */
+    private static final class RestoredChunk {
+        private final List<RestoredRecord> records;
+        private final int frameLength;
+
+        private RestoredChunk(List<RestoredRecord> records, int frameLength) {
+            this.records = records;
+            this.frameLength = frameLength;
+        }
+    }
+
+    /** A record of a verified chunk, re-encrypted for the vault, or a removal without payload. */
+    private static final class RestoredRecord {
+        private final VaultStore.Section section;
+        private final String key;
+        private final byte[] payload;
+
+        private RestoredRecord(VaultStore.Section section, String key, byte[] payload) {
+            this.section = section;
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,1390 @@
+package io.github.pragwl.store;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import io.github.pragwl.manager.ActiveAccountsManager;
+import io.github.pragwl.manager.ArchivedAccountManager;
+import io.github.pragwl.utility.FileUtility;
+import io.github.pragwl.utility.Metrics;
+import io.github.pragwl.utility.RecordFormat;
+import io.github.pragwl.utility.SerializationUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Single-file, append-only store for encrypted vault records. This class implements the Singleton
+ * pattern.
+ *
+ * <p>Every record is individually encrypted and appended to one log file. A record is either a
+ * put of an encrypted object under a key or a delete of a key, within a {@link Section}. The
+ * in-memory offset index maps every live key to the position of its latest put and is rebuilt at
+ * startup by scanning the record headers, without decrypting anything. Superseded records are
+ * dropped by {@link #compact()}.
+ *
+ * <p>Payloads are written in the binary {@link RecordFormat}. Records still in the legacy Base64
+ * format, for example migrated from the old directory layout, stay readable and are rewritten in
+ * the binary format by a background thread after the next save.
+ *
+ * <p>Log layout: a header of magic and format version, followed by records of the form
+ * {@code [int length][byte type][byte section][short keyLength][key][payload][int crc32]}, where
+ * the length covers everything after the length field and the CRC covers type through payload.
+ *
+ * <p>The log doubles as a write-ahead journal. A {@link Transaction} appends its records flagged as
+ * transactional and followed by a commit record, all in a single write. At startup the records of
+ * committed transactions are applied, and an incomplete transaction at the end of the log is
+ * rolled back by truncating it. Writes are synced with group commit: a commit waiting for the sync
+ * of an earlier one is covered by that sync if its records were already written, so concurrent and
+ * batched writes share one fsync.
+ *
+ * <p>Only one process at a time can open the vault: an exclusive lock on a {@code .lock} file next
+ * to the log is held for the life of the store, so a session, the daemon and a key rotation never
+ * append to the same log.
+ */
+@Slf4j
+public final class VaultStore implements Closeable {
+
+    private static final int MAGIC = 0x43564C47; // "CVLG"
+    private static final int FORMAT_VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 1 + 2 + 4;
+    /** Largest record length accepted, so a damaged length field is told apart from a record. */
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte COMMIT = 3;
+    private static final byte TRANSACTIONAL = (byte) 0x80;
+    private static final long COMPACTION_MIN_GARBAGE_BYTES = 64 * 1024;
+    private static final Metrics.Timer SYNC_TIME =
+            Metrics.timer("credvault_vault_sync_seconds", "Time spent syncing the vault log.");
+
+    private static VaultStore vaultStore;
+
+    private final Path logPath;
+    private final FileLock processLock;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Section, LinkedHashMap<String, RecordRef>> index =
+            new EnumMap<>(Section.class);
+    private final Object mappingLock = new Object();
+    private FileChannel channel;
+    private volatile MappedByteBuffer mappedLog;
+    private long legacyRecords;
+    private final AtomicBoolean upgradeRunning = new AtomicBoolean();
+    private final Set<RecordRef> failedUpgrades = ConcurrentHashMap.newKeySet();
+    private long endOffset;
+    private long liveBytes;
+    private final Object syncLock = new Object();
+    private volatile long syncedOffset;
+    /** Set once records the index does not cover could not be cut off the log again. */
+    private volatile boolean writesFailed;
+
+    private VaultStore(Path logPath) throws IOException {
+        this.logPath = logPath;
+        this.processLock = lockVault(logPath);
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            processLock.channel().close();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the exclusive lock that keeps other processes from opening the vault. It is a separate
+     * file, since the log itself is replaced by compaction and key rotation.
+     */
+    private static FileLock lockVault(Path logPath) throws IOException {
+        Path lockPath = logPath.resolveSibling(logPath.getFileName() + ".lock");
+        if (lockPath.getParent() != null) {
+            Files.createDirectories(lockPath.getParent());
+        }
+        FileChannel lockChannel =
+                FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException(
+                    "The vault is in use by another process, such as a session, the daemon or a"
+                            + " key rotation.");
+        }
+        return fileLock;
+    }
+
+    /**
+     * Retrieves the singleton instance of `VaultStore`, opening the vault log and migrating the
+     * legacy directory layout on first use.
+     *
+     * @return The singleton instance.
+     * @throws IllegalStateException if the vault log cannot be opened.
+     */
+    public static VaultStore getInstance() {
+        if (vaultStore == null) {
+            synchronized (VaultStore.class) {
+                if (vaultStore == null) {
+                    Path logPath = Paths.get(StoreConfig.vaultDirectory, StoreConfig.logFileName);
+                    try {
+                        if (!Files.exists(logPath)) {
+                            migrateLegacyDirectories(logPath);
+                        }
+                        vaultStore = new VaultStore(logPath);
+                        vaultStore.compactIfWasteful();
+                    } catch (IOException e) {
+                        log.error("Failed to open vault store {}: {}", logPath, e.getMessage());
+                        throw new IllegalStateException(
+                                "Failed to open vault store: " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        return vaultStore;
+    }
+
+    /**
+     * Opens a store on the given log instead of the configured one, outside the singleton, for
+     * example in tests. The caller must close it.
+     *
+     * @param logPath The vault log, created if it does not exist.
+     * @return The opened store.
+     * @throws IOException if the log cannot be opened or is damaged.
+     */
+    static VaultStore open(Path logPath) throws IOException {
+        return new VaultStore(logPath);
+    }
+
+    /**
+     * Encrypts an object and appends it to the log under the given key, superseding any earlier
+     * record of that key.
+     *
+     * @param section The section the record belongs to.
+     * @param key The key of the record.
+     * @param obj The object to store.
+     * @throws RuntimeException if encryption or the write fails.
+     */
+    public void put(Section section, String key, Object obj) {
+        byte[] payload = SerializationUtil.toEncryptedBytes(obj);
+        long offset;
+        boolean hasLegacyRecords;
+        lock.writeLock().lock();
+        try {
+            append(PUT, section, key, payload);
+            offset = endOffset;
+            hasLegacyRecords = legacyRecords > 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(offset);
+        if (hasLegacyRecords) {
+            scheduleLegacyUpgrade();
+        }
+    }
+
+    /**
+     * Appends a delete of the given key. Deleting a key that does not exist is a no-op.
+     *
+     * @param section The section the record belongs to.
+     * @param key The key of the record.
+     * @return `true` if the key existed, `false` otherwise.
+     * @throws RuntimeException if the write fails.
+     */
+    public boolean delete(Section section, String key) {
+        long offset;
+        lock.writeLock().lock();
+        try {
+            if (!index.get(section).containsKey(key)) {
+                log.warn("Record does not exist: {}/{}", section, key);
+                return false;
+            }
+            append(DELETE, section, key, new byte[0]);
+            offset = endOffset;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sync(offset);
+        return true;
+    }
+
+    /**
+     * Starts a transaction. Its puts and deletes take effect together when it is committed, or not
+     * at all.
+     *
+     * @return A new transaction.
+     */
+    public Transaction begin() {
+        return new Transaction();
+    }
+
+    /**
+     * Starts a bulk transaction, which streams its records to the log instead of collecting them in
+     * memory. The store is locked until the bulk transaction is committed or closed.
+     *
+     * @return A new bulk transaction, owned by the calling thread.
+     */
+    public BulkTransaction beginBulk() {
+        return new BulkTransaction();
+    }
+
+    /**
+     * Reads and decrypts the latest record of the given key.
+     *
+     * @param section The section the record belongs to.
+     * @param key The key of the record.
+     * @return The stored object, or `null` if the key does not exist or the record cannot be read.
+     * @throws RuntimeException if decryption fails.
+     */
+    public Object read(Section section, String key) {
+        ByteBuffer payload;
+        lock.readLock().lock();
+        try {
+            RecordRef ref = index.get(section).get(key);
+            if (ref == null) {
+                return null;
+            }
+            payload = mappedPayload(ref);
+        } catch (IOException e) {
+            log.error("Failed to read record {}/{}: {}", section, key, e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+        return SerializationUtil.fromEncryptedBuffer(payload, section + "/" + key);
+    }
+
+    /**
+     * Returns the live records of a section in the order their keys were first written. Rewriting
+     * a key keeps its position, while a key that is deleted and written again moves to the end.
+     * Key rotation and backups rely on this order to resume and plan their work.
+     *
+     * @param section The section to list.
+     * @return The keys and sizes of the live records.
+     */
+    public List<RecordInfo> records(Section section) {
+        lock.readLock().lock();
+        try {
+            List<RecordInfo> records = new ArrayList<>(index.get(section).size());
+            index.get(section)
+                    .forEach(
+                            (key, ref) -> records.add(new RecordInfo(key, ref.getPayloadLength())));
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the keys of the live records of a section in the order they were first written, as
+     * {@link #records(Section)} does.
+     *
+     * @param section The section to list.
+     * @return The keys of the live records.
+     */
+    public List<String> keys(Section section) {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(index.get(section).keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the latest put of every live key, dropping superseded versions and
+     * delete markers. The compacted log replaces the current one with an atomic move.
+     *
+     * @throws RuntimeException if compaction fails. The current log is left untouched.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            long sizeBefore = endOffset;
+            Path compactPath = logPath.resolveSibling(logPath.getFileName() + ".compact");
+            try (FileChannel target = openLog(compactPath, true)) {
+                long position = HEADER_LENGTH;
+                for (Section section : Section.values()) {
+                    for (Map.Entry<String, RecordRef> entry : index.get(section).entrySet()) {
+                        byte[] payload = readPayload(entry.getValue());
+                        ByteBuffer record = encode(PUT, section, entry.getKey(), payload);
+                        position += writeFully(target, record, position);
+                    }
+                }
+                target.force(true);
+            }
+            replaceLog(compactPath);
+            log.info("Compacted vault log {} from {} to {} bytes", logPath, sizeBefore, endOffset);
+        } catch (IOException e) {
+            log.error("Failed to compact vault log {}: {}", logPath, e.getMessage());
+            throw new RuntimeException("Failed to compact vault log: " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the path of the vault log.
+     *
+     * @return The log path.
+     */
+    Path getLogPath() {
+        return logPath;
+    }
+
+    /**
+     * Returns the length of the vault log, including superseded records.
+     *
+     * @return The log length in bytes.
+     */
+    long getLogLength() {
+        lock.readLock().lock();
+        try {
+            return endOffset;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the encrypted payload of the latest record of a key without decrypting it.
+     *
+     * @param section The section the record belongs to.
+     * @param key The key of the record.
+     * @return A copy of the encrypted payload, or `null` if the key does not exist.
+     * @throws IOException if the read fails.
+     */
+    byte[] readEncrypted(Section section, String key) throws IOException {
+        lock.readLock().lock();
+        try {
+            RecordRef ref = index.get(section).get(key);
+            return ref == null ? null : readPayload(ref);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the log with a complete log written elsewhere, using an atomic move, and reopens it.
+     *
+     * @param replacement The log to move into place.
+     * @throws IOException if the move or reopening fails.
+     */
+    void replaceLog(Path replacement) throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+            Files.move(
+                    replacement,
+                    logPath,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            open();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Encodes a put record, ready to be written to a log.
+     *
+     * @param section The section the record belongs to.
+     * @param key The key of the record.
+     * @param payload The encrypted payload.
+     * @return The encoded record.
+     */
+    static ByteBuffer encodePut(Section section, String key, byte[] payload) {
+        return encode(PUT, section, key, payload);
+    }
+
+    /**
+     * Closes the underlying log file.
+     *
+     * @throws IOException if closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+            processLock.channel().close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void scheduleLegacyUpgrade() {
+        if (upgradeRunning.compareAndSet(false, true)) {
+            Thread upgrader = new Thread(this::upgradeLegacyRecords, "vault-record-upgrader");
+            upgrader.setDaemon(true);
+            upgrader.start();
+        }
+    }
+
+    /**
+     * Rewrites every live legacy record in the binary format. A record is only replaced if it was
+     * not superseded while being re-encrypted. Records that cannot be upgraded are skipped and not
+     * retried.
+     */
+    private void upgradeLegacyRecords() {
+        int upgraded = 0;
+        try {
+            for (Section section : Section.values()) {
+                List<String> legacyKeys;
+                lock.readLock().lock();
+                try {
+                    legacyKeys = new ArrayList<>();
+                    index.get(section)
+                            .forEach(
+                                    (key, ref) -> {
+                                        if (ref.isLegacy() && !failedUpgrades.contains(ref)) {
+                                            legacyKeys.add(key);
+                                        }
+                                    });
+                } finally {
+                    lock.readLock().unlock();
+                }
+
+                for (String key : legacyKeys) {
+                    if (upgradeLegacyRecord(section, key)) {
+                        upgraded++;
+                    }
+                }
+            }
+        } finally {
+            upgradeRunning.set(false);
+        }
+        log.info("Upgraded {} legacy records of {} to the binary format", upgraded, logPath);
+    }
+
+    private boolean upgradeLegacyRecord(Section section, String key) {
+        RecordRef ref;
+        ByteBuffer payload;
+        lock.readLock().lock();
+        try {
+            ref = index.get(section).get(key);
+            if (ref == null || !ref.isLegacy()) {
+                return false;
+            }
+            payload = mappedPayload(ref);
+        } catch (IOException e) {
+            log.error("Failed to read legacy record {}/{}: {}", section, key, e.getMessage());
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        byte[] upgradedPayload;
+        try {
+            upgradedPayload = SerializationUtil.upgradeEncryptedBuffer(payload);
+        } catch (RuntimeException e) {
+            log.error("Failed to upgrade legacy record {}/{}: {}", section, key, e.getMessage());
+            failedUpgrades.add(ref);
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (index.get(section).get(key) != ref) {
+                return false;
+            }
+            append(PUT, section, key, upgradedPayload);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfWasteful() {
+        long garbageBytes = endOffset - HEADER_LENGTH - liveBytes;
+        if (garbageBytes >= COMPACTION_MIN_GARBAGE_BYTES && garbageBytes > liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Opens the log and rebuilds the offset index, truncating a torn record at the tail after
+     * copying the log to a new {@code .corrupt} file. A damaged record followed by more data is
+     * not a torn write, so the log is left untouched and opening fails instead of dropping every
+     * record after it. This includes a record whose length field is implausible, or runs past the
+     * end of the log while complete records follow it.
+     */
+    private void open() throws IOException {
+        channel = openLog(logPath, false);
+        mappedLog = null;
+        for (Section section : Section.values()) {
+            index.put(section, new LinkedHashMap<>());
+        }
+        liveBytes = 0;
+        legacyRecords = 0;
+        // Anything left by a failed rollback is an incomplete transaction, rolled back below
+        writesFailed = false;
+
+        long size = channel.size();
+        long position = HEADER_LENGTH;
+        List<ScannedRecord> transaction = new ArrayList<>();
+        long transactionStart = position;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position < size) {
+            lengthBuffer.clear();
+            if (channel.read(lengthBuffer, position) < 4 || lengthBuffer.flip().remaining() < 4) {
+                break;
+            }
+            int length = lengthBuffer.getInt();
+            if (length < RECORD_OVERHEAD - 4 || length > MAX_RECORD_LENGTH) {
+                requireTornTail(position, position + 4, size);
+                break;
+            }
+            if (position + 4 + length > size) {
+                requireNoRecordAfter(position, size);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(record, position + 4);
+            record.flip();
+            ScannedRecord scanned = scanRecord(record, position, length);
+            if (scanned == null) {
+                requireTornTail(position, position + 4 + length, size);
+                break;
+            }
+            if (scanned.type == COMMIT) {
+                transaction.forEach(this::applyRecord);
+                transaction.clear();
+            } else if ((scanned.type & TRANSACTIONAL) != 0) {
+                if (transaction.isEmpty()) {
+                    transactionStart = position;
+                }
+                transaction.add(scanned);
+            } else {
+                applyRecord(scanned);
+            }
+            position += 4 + length;
+        }
+
+        if (!transaction.isEmpty()) {
+            log.warn(
+                    "Rolling back an incomplete transaction of {} records at the end of {}",
+                    transaction.size(),
+                    logPath);
+            position = transactionStart;
+        }
+        if (position < size) {
+            // Damage can still pass for a torn write, so keep the data before repairing
+            channel.force(false);
+            Path corruptPath = copyCorruptLog();
+            log.warn(
+                    "Truncating {} bytes of incomplete records at offset {} of {}, saved as {}",
+                    size - position,
+                    position,
+                    logPath,
+                    corruptPath);
+            channel.truncate(position);
+            channel.force(false);
+        }
+        endOffset = position;
+        syncedOffset = position;
+    }
+
+    /**
+     * Checks that a damaged record is a torn write at the tail of the log: it either reaches the
+     * end of the file, or only zeros follow it, as after a crash while the file was extended.
+     *
+     * @throws IOException if valid data may follow the damaged record.
+     */
+    private void requireTornTail(long position, long recordEnd, long size) throws IOException {
+        if (recordEnd >= size || isZeroFilled(position, size)) {
+            return;
+        }
+        throw damaged(position, size);
+    }
+
+    /**
+     * Checks that a record running past the end of the log is a torn write: no complete record
+     * starts within the bytes after its offset, as it would after a damaged length field. The
+     * length is at most {@link #MAX_RECORD_LENGTH}, so those bytes fit in memory.
+     *
+     * @throws IOException if a complete record follows the offset.
+     */
+    private void requireNoRecordAfter(long position, long size) throws IOException {
+        ByteBuffer tail = ByteBuffer.allocate((int) (size - position));
+        readFully(tail, position);
+        byte[] bytes = tail.array();
+        CRC32 crc = new CRC32();
+        for (int offset = 1; offset + RECORD_OVERHEAD <= bytes.length; offset++) {
+            int length = tail.getInt(offset);
+            if (length < RECORD_OVERHEAD - 4 || length > bytes.length - offset - 4) {
+                continue;
+            }
+            byte type = bytes[offset + 4];
+            int operation = type & ~TRANSACTIONAL;
+            if (type != COMMIT && operation != PUT && operation != DELETE) {
+                continue;
+            }
+            crc.reset();
+            crc.update(bytes, offset + 4, length - 4);
+            if ((int) crc.getValue() == tail.getInt(offset + length)) {
+                throw damaged(position, size);
+            }
+        }
+    }
+
+    private IOException damaged(long position, long size) throws IOException {
+        log.error("Vault log {} is damaged at offset {} of {} bytes", logPath, position, size);
+        channel.close();
+        return new IOException(
+                "The vault log "
+                        + logPath
+                        + " is damaged at offset "
+                        + position
+                        + ", before its end. It was left untouched; restore it from a backup.");
+    }
+
+    /**
+     * Copies the log next to itself before a repair, under the first free name of {@code
+     * .corrupt}, {@code .corrupt.1} and so on, so no earlier copy is ever overwritten.
+     */
+    private Path copyCorruptLog() throws IOException {
+        String baseName = logPath.getFileName() + ".corrupt";
+        for (int sequence = 0; ; sequence++) {
+            Path corruptPath =
+                    logPath.resolveSibling(sequence == 0 ? baseName : baseName + "." + sequence);
+            try {
+                Files.copy(logPath, corruptPath);
+                return corruptPath;
+            } catch (FileAlreadyExistsException e) {
+                // Kept from an earlier repair
+            }
+        }
+    }
+
+    private boolean isZeroFilled(long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), size - position));
+            readFully(buffer, position);
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) != 0) {
+                    return false;
+                }
+            }
+            position += buffer.limit();
+        }
+        return true;
+    }
+
+    /** Parses a record read from the log, or returns `null` if its checksum does not match. */
+    private static ScannedRecord scanRecord(ByteBuffer record, long recordOffset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, length - 4);
+        if ((int) crc.getValue() != record.getInt(length - 4)) {
+            return null;
+        }
+        byte type = record.get();
+        Section section = Section.fromId(record.get());
+        int keyLength = record.getShort() & 0xFFFF;
+        String key =
+                new String(record.array(), record.position(), keyLength, StandardCharsets.UTF_8);
+        int payloadStart = record.position() + keyLength;
+        long payloadOffset = recordOffset + 4 + payloadStart;
+        int payloadLength = length - 4 - payloadStart;
+        boolean legacy =
+                (type & ~TRANSACTIONAL) == PUT
+                        && RecordFormat.isLegacy(
+                                ByteBuffer.wrap(record.array(), payloadStart, payloadLength));
+        return new ScannedRecord(
+                type,
+                section,
+                key,
+                new RecordRef(recordOffset, 4 + length, payloadOffset, payloadLength, legacy));
+    }
+
+    private void applyRecord(ScannedRecord record) {
+        updateIndex((byte) (record.type & ~TRANSACTIONAL), record.section, record.key, record.ref);
+    }
+
+    private void updateIndex(byte type, Section section, String key, RecordRef ref) {
+        // A put keeps the key's position, so rewriting a record does not reorder its section
+        LinkedHashMap<String, RecordRef> records = index.get(section);
+        RecordRef previous = type == PUT ? records.put(key, ref) : records.remove(key);
+        if (previous != null) {
+            liveBytes -= previous.getRecordLength();
+            if (previous.isLegacy()) {
+                legacyRecords--;
+            }
+        }
+        if (type == PUT) {
+            liveBytes += ref.getRecordLength();
+            if (ref.isLegacy()) {
+                legacyRecords++;
+            }
+        }
+    }
+
+    private void append(byte type, Section section, String key, byte[] payload) {
+        appendAll(List.of(new Operation(type, section, key, payload)), false);
+    }
+
+    /**
+     * Appends records with a single write and applies them to the index once written. Records of
+     * a transaction are flagged and followed by a commit record. Must be called with the write
+     * lock held.
+     */
+    private void appendAll(List<Operation> operations, boolean transactional) {
+        checkWritable();
+        List<ByteBuffer> records = new ArrayList<>(operations.size() + 1);
+        for (Operation operation : operations) {
+            byte type = transactional ? (byte) (operation.type | TRANSACTIONAL) : operation.type;
+            records.add(encode(type, operation.section, operation.key, operation.payload));
+        }
+        if (transactional) {
+            records.add(encode(COMMIT, Section.ACTIVE, "", new byte[0]));
+        }
+        ByteBuffer batch =
+                ByteBuffer.allocate(records.stream().mapToInt(ByteBuffer::remaining).sum());
+        records.forEach(batch::put);
+
+        try {
+            writeFully(channel, batch.flip(), endOffset);
+        } catch (IOException e) {
+            log.error("Failed to append to vault log {}: {}", logPath, e.getMessage());
+            discardPartialWrite();
+            throw new RuntimeException("Failed to write vault record: " + e.getMessage(), e);
+        }
+
+        long recordOffset = endOffset;
+        for (int i = 0; i < operations.size(); i++) {
+            Operation operation = operations.get(i);
+            int recordLength = records.get(i).capacity();
+            int keyLength = operation.key.getBytes(StandardCharsets.UTF_8).length;
+            long payloadOffset = recordOffset + 4 + 1 + 1 + 2 + keyLength;
+            boolean legacy =
+                    operation.type == PUT
+                            && RecordFormat.isLegacy(ByteBuffer.wrap(operation.payload));
+            updateIndex(
+                    operation.type,
+                    operation.section,
+                    operation.key,
+                    new RecordRef(
+                            recordOffset,
+                            recordLength,
+                            payloadOffset,
+                            operation.payload.length,
+                            legacy));
+            recordOffset += recordLength;
+            log.info(
+                    "Appended {} record {}/{} to {}",
+                    operation.type == PUT ? "put" : "delete",
+                    operation.section,
+                    operation.key,
+                    logPath);
+        }
+        endOffset += batch.capacity();
+    }
+
+    /** Cuts off the remains of a failed write, so they are not mistaken for records later. */
+    private void discardPartialWrite() {
+        cutLog(endOffset);
+    }
+
+    /**
+     * Truncates the log to the given offset. If that fails, the records after it are still on
+     * disk but not in the index, and the next append would overwrite their start, leaving damage
+     * that blocks the next start. Writes are therefore refused until the log is reopened, which
+     * rolls the records back instead.
+     */
+    private void cutLog(long offset) {
+        try {
+            channel.truncate(offset);
+        } catch (IOException e) {
+            writesFailed = true;
+            log.error(
+                    "Failed to truncate vault log {}, refusing further writes: {}",
+                    logPath,
+                    e.getMessage());
+        }
+    }
+
+    private void checkWritable() {
+        if (writesFailed) {
+            throw new IllegalStateException(
+                    "The vault log could not be rolled back after a failed write, so it is read"
+                            + " only until the application is restarted.");
+        }
+    }
+
+    /**
+     * Makes everything up to the given log offset durable. If a concurrent caller synced past the
+     * offset while this one waited, no further sync is needed.
+     */
+    private void sync(long offset) {
+        synchronized (syncLock) {
+            if (syncedOffset >= offset) {
+                return;
+            }
+            FileChannel current;
+            long target;
+            lock.readLock().lock();
+            try {
+                current = channel;
+                target = endOffset;
+            } finally {
+                lock.readLock().unlock();
+            }
+            // Forced outside the store lock, so writers can append the next group meanwhile
+            long start = Metrics.start();
+            try {
+                current.force(false);
+                syncedOffset = target;
+                SYNC_TIME.stop(start);
+            } catch (ClosedChannelException e) {
+                // The log was replaced by a compacted or rotated log, which is synced as a whole
+                syncedOffset = Math.max(syncedOffset, offset);
+            } catch (IOException e) {
+                log.error("Failed to sync vault log {}: {}", logPath, e.getMessage());
+                throw new RuntimeException("Failed to sync vault log: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the payload of a record as a slice of the memory-mapped log, so reads decrypt
+     * straight from the page cache without copying. The mapping is extended when the record was
+     * appended after the log was last mapped. Logs beyond the 2 GB mapping limit fall back to a
+     * positional read.
+     */
+    private ByteBuffer mappedPayload(RecordRef ref) throws IOException {
+        long end = ref.getPayloadOffset() + ref.getPayloadLength();
+        if (end > Integer.MAX_VALUE) {
+            return ByteBuffer.wrap(readPayload(ref));
+        }
+        MappedByteBuffer mapping = mappedLog;
+        if (mapping == null || mapping.capacity() < end) {
+            synchronized (mappingLock) {
+                mapping = mappedLog;
+                if (mapping == null || mapping.capacity() < end) {
+                    long size = Math.min(endOffset, Integer.MAX_VALUE);
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    mappedLog = mapping;
+                }
+            }
+        }
+        return mapping.slice((int) ref.getPayloadOffset(), ref.getPayloadLength());
+    }
+
+    private byte[] readPayload(RecordRef ref) throws IOException {
+        ByteBuffer payload = ByteBuffer.allocate(ref.getPayloadLength());
+        readFully(payload, ref.getPayloadOffset());
+        return payload.array();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of vault log at " + position);
+            }
+        }
+    }
+
+    private static ByteBuffer encode(byte type, Section section, String key, byte[] payload) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Record key is too long: " + key);
+        }
+        int length = RECORD_OVERHEAD - 4 + keyBytes.length + payload.length;
+        if (length > MAX_RECORD_LENGTH) {
+            throw new IllegalArgumentException("Record is too large: " + key);
+        }
+        ByteBuffer record = ByteBuffer.allocate(4 + length);
+        record.putInt(length)
+                .put(type)
+                .put(section.getId())
+                .putShort((short) keyBytes.length)
+                .put(keyBytes)
+                .put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length - 4);
+        record.putInt((int) crc.getValue());
+        return record.flip();
+    }
+
+    static int writeFully(FileChannel target, ByteBuffer buffer, long position)
+            throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += target.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    static FileChannel openLog(Path path, boolean truncate) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel fileChannel =
+                truncate
+                        ? FileChannel.open(
+                                path,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING,
+                                StandardOpenOption.READ,
+                                StandardOpenOption.WRITE)
+                        : FileChannel.open(
+                                path,
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.READ,
+                                StandardOpenOption.WRITE);
+        if (fileChannel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION);
+            writeFully(fileChannel, header.flip(), 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            fileChannel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_LENGTH
+                    || header.getInt() != MAGIC
+                    || header.getInt() != FORMAT_VERSION) {
+                fileChannel.close();
+                throw new IOException("Not a vault log of a supported version: " + path);
+            }
+        }
+        return fileChannel;
+    }
+
+    /**
+     * Builds the vault log from the legacy layout of one encrypted file per account version in the
+     * active and archived directories. The files are copied as-is, since their contents are already
+     * encrypted records. The log is written to a temporary file and moved into place once complete,
+     * so an interrupted migration is simply redone on the next start.
+     */
+    private static void migrateLegacyDirectories(Path logPath) throws IOException {
+        Path migrationPath = logPath.resolveSibling(logPath.getFileName() + ".migrate");
+        int migrated = 0;
+        try (FileChannel target = openLog(migrationPath, true)) {
+            long position = HEADER_LENGTH;
+            for (Section section : Section.values()) {
+                if (section.getLegacyDirectory() == null) {
+                    continue;
+                }
+                List<File> files =
+                        new ArrayList<>(FileUtility.listFiles(section.getLegacyDirectory()));
+                files.sort(
+                        Comparator.comparingLong(File::lastModified).thenComparing(File::getName));
+                for (File file : files) {
+                    String key =
+                            StringUtils.removeEnd(file.getName(), SerializationUtil.fileExtension);
+                    byte[] payload = Files.readAllBytes(file.toPath());
+                    position += writeFully(target, encode(PUT, section, key, payload), position);
+                    migrated++;
+                }
+            }
+            target.force(true);
+        }
+        Files.move(migrationPath, logPath, StandardCopyOption.ATOMIC_MOVE);
+        if (migrated > 0) {
+            log.info(
+                    "Migrated {} account files into {}. {} and {} are no longer used.",
+                    migrated,
+                    logPath,
+                    Section.ACTIVE.getLegacyDirectory(),
+                    Section.ARCHIVED.getLegacyDirectory());
+        }
+    }
+
+    /**
+     * The sections of the vault. Each key is unique within its section. Sections introduced with
+     * the vault log have no legacy directory.
+     */
+    @Getter
+    public enum Section {
+        ACTIVE((byte) 0, ActiveAccountsManager.AccountConfig.activeAccountDirectory),
+        ARCHIVED((byte) 1, ArchivedAccountManager.AccountConfig.archiveAccountDirectory),
+        HISTORY((byte) 2, null);
+
+        private final byte id;
+        private final String legacyDirectory;
+
+        Section(byte id, String legacyDirectory) {
+            this.id = id;
+            this.legacyDirectory = legacyDirectory;
+        }
+
+        static Section fromId(byte id) {
+            for (Section section : values()) {
+                if (section.id == id) {
+                    return section;
+                }
+            }
+            throw new IllegalArgumentException("Unknown vault section: " + id);
+        }
+    }
+
+    /**
+     * A group of puts and deletes that is written with a single append and becomes visible, and
+     * durable, as a whole on {@link #commit()}. Objects are encrypted when they are added, outside
+     * the store lock.
+     */
+    public final class Transaction implements RecordWriter {
+        private final List<Operation> operations = new ArrayList<>();
+        private boolean committed;
+
+        private Transaction() {}
+
+        /**
+         * Adds a put of an object under the given key.
+         *
+         * @param section The section the record belongs to.
+         * @param key The key of the record.
+         * @param obj The object to store.
+         * @return This transaction.
+         * @throws RuntimeException if encryption fails.
+         */
+        @Override
+        public Transaction put(Section section, String key, Object obj) {
+            checkOpen();
+            byte[] payload = SerializationUtil.toEncryptedBytes(obj);
+            operations.add(new Operation(PUT, section, key, payload));
+            return this;
+        }
+
+        /**
+         * Adds a delete of the given key. The delete is skipped if the key neither exists at commit
+         * time nor was put earlier in this transaction.
+         *
+         * @param section The section the record belongs to.
+         * @param key The key of the record.
+         * @return This transaction.
+         */
+        @Override
+        public Transaction delete(Section section, String key) {
+            checkOpen();
+            operations.add(new Operation(DELETE, section, key, new byte[0]));
+            return this;
+        }
+
+        /**
+         * Writes all operations and waits until they are durable.
+         *
+         * @throws RuntimeException if the write or the sync fails. A failed write leaves no trace
+         *     of the transaction.
+         */
+        public void commit() {
+            checkOpen();
+            committed = true;
+            long offset;
+            lock.writeLock().lock();
+            try {
+                List<Operation> effective = new ArrayList<>(operations.size());
+                Set<String> written = new HashSet<>();
+                for (Operation operation : operations) {
+                    String recordName = operation.section + "/" + operation.key;
+                    if (operation.type == PUT) {
+                        written.add(recordName);
+                    }
+                    if (operation.type == DELETE
+                            && !written.remove(recordName)
+                            && !index.get(operation.section).containsKey(operation.key)) {
+                        log.warn(
+                                "Record does not exist: {}/{}", operation.section, operation.key);
+                    } else {
+                        effective.add(operation);
+                    }
+                }
+                if (effective.isEmpty()) {
+                    return;
+                }
+                appendAll(effective, true);
+                offset = endOffset;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            sync(offset);
+        }
+
+        private void checkOpen() {
+            if (committed) {
+                throw new IllegalStateException("Transaction already committed.");
+            }
+        }
+    }
+
+    /**
+     * A transaction of any size whose records are appended as they are added, through a write
+     * buffer, and applied to the index only once the commit record is durable. Holds the write lock
+     * from start to commit, so it must be used by a single thread and always be closed. Closing it
+     * without committing cuts its records off the log again; a crash in between leaves an
+     * incomplete transaction that is rolled back at the next start.
+     */
+    public final class BulkTransaction implements RecordWriter, Closeable {
+        private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+        private final long startOffset;
+        private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private final List<ScannedRecord> written = new ArrayList<>();
+        private long position;
+        private boolean finished;
+
+        private BulkTransaction() {
+            lock.writeLock().lock();
+            try {
+                checkWritable();
+            } catch (IllegalStateException e) {
+                lock.writeLock().unlock();
+                throw e;
+            }
+            startOffset = endOffset;
+            position = endOffset;
+        }
+
+        /**
+         * Encrypts an object and appends a put of it under the given key.
+         *
+         * @param section The section the record belongs to.
+         * @param key The key of the record.
+         * @param obj The object to store.
+         * @return This transaction.
+         * @throws RuntimeException if encryption or the write fails.
+         */
+        @Override
+        public BulkTransaction put(Section section, String key, Object obj) {
+            return putEncrypted(section, key, SerializationUtil.toEncryptedBytes(obj));
+        }
+
+        /**
+         * Appends a put of an already encrypted payload, for example encrypted on a worker thread
+         * with {@link SerializationUtil#toEncryptedBytes(Object)}.
+         *
+         * @param section The section the record belongs to.
+         * @param key The key of the record.
+         * @param payload The encrypted payload.
+         * @return This transaction.
+         * @throws RuntimeException if the write fails.
+         */
+        public BulkTransaction putEncrypted(Section section, String key, byte[] payload) {
+            appendRecord(PUT, section, key, payload);
+            return this;
+        }
+
+        /**
+         * Appends a delete of the given key.
+         *
+         * @param section The section the record belongs to.
+         * @param key The key of the record.
+         * @return This transaction.
+         * @throws RuntimeException if the write fails.
+         */
+        @Override
+        public BulkTransaction delete(Section section, String key) {
+            appendRecord(DELETE, section, key, new byte[0]);
+            return this;
+        }
+
+        /**
+         * Returns the number of records appended so far.
+         *
+         * @return The record count.
+         */
+        public int size() {
+            return written.size();
+        }
+
+        /**
+         * Appends the commit record, syncs the log and applies all records to the index.
+         *
+         * @throws RuntimeException if the write or the sync fails. The transaction is then rolled
+         *     back when it is closed.
+         */
+        public void commit() {
+            checkOpen();
+            write(encode(COMMIT, Section.ACTIVE, "", new byte[0]));
+            try {
+                flushBuffer();
+                channel.force(false);
+            } catch (IOException e) {
+                log.error("Failed to commit bulk transaction to {}: {}", logPath, e.getMessage());
+                throw new RuntimeException("Failed to commit vault records: " + e.getMessage(), e);
+            }
+            written.forEach(VaultStore.this::applyRecord);
+            endOffset = position;
+            syncedOffset = position;
+            finished = true;
+            lock.writeLock().unlock();
+            log.info(
+                    "Committed {} records ({} bytes) to {}",
+                    written.size(),
+                    position - startOffset,
+                    logPath);
+        }
+
+        /** Rolls the transaction back unless it was committed, and releases the store. */
+        @Override
+        public void close() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                // If this fails, the uncommitted records are rolled back at the next start instead
+                cutLog(startOffset);
+                log.warn("Rolled back a bulk transaction of {} records", written.size());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void appendRecord(byte type, Section section, String key, byte[] payload) {
+            checkOpen();
+            ByteBuffer record = encode((byte) (type | TRANSACTIONAL), section, key, payload);
+            int recordLength = record.remaining();
+            int keyLength = key.getBytes(StandardCharsets.UTF_8).length;
+            boolean legacy = type == PUT && RecordFormat.isLegacy(ByteBuffer.wrap(payload));
+            written.add(
+                    new ScannedRecord(
+                            (byte) (type | TRANSACTIONAL),
+                            section,
+                            key,
+                            new RecordRef(
+                                    position,
+                                    recordLength,
+                                    position + 4 + 1 + 1 + 2 + keyLength,
+                                    payload.length,
+                                    legacy)));
+            write(record);
+        }
+
+        private void write(ByteBuffer record) {
+            try {
+                if (record.remaining() > writeBuffer.remaining()) {
+                    flushBuffer();
+                }
+                long recordLength = record.remaining();
+                if (recordLength > writeBuffer.capacity()) {
+                    writeFully(channel, record, position + writeBuffer.position());
+                } else {
+                    writeBuffer.put(record);
+                }
+                position += recordLength;
+            } catch (IOException e) {
+                log.error("Failed to append to vault log {}: {}", logPath, e.getMessage());
+                throw new RuntimeException("Failed to write vault record: " + e.getMessage(), e);
+            }
+        }
+
+        /** Writes the buffered records, which start where the unbuffered part of the log ends. */
+        private void flushBuffer() throws IOException {
+            int buffered = writeBuffer.position();
+            writeFully(channel, writeBuffer.flip(), position - buffered);
+            writeBuffer.clear();
+        }
+
+        private void checkOpen() {
+            if (finished) {
+                throw new IllegalStateException("Bulk transaction already finished.");
+            }
+        }
+    }
+
+    /** A put or delete waiting to be appended. */
+    private static final class Operation {
+        private final byte type;
+        private final Section section;
+        private final String key;
+        private final byte[] payload;
+
+        private Operation(byte type, Section section, String key, byte[] payload) {
+            this.type = type;
+            this.section = section;
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+
+    /** A record parsed while scanning the log. */
+    private static final class ScannedRecord {
+        private final byte type;
+        private final Section section;
+        private final String key;
+        private final RecordRef ref;
+
+        private ScannedRecord(byte type, Section section, String key, RecordRef ref) {
+            this.type = type;
+            this.section = section;
+            this.key = key;
+            this.ref = ref;
+        }
+    }
+
+    /** Key and encrypted size of a live record. */
+    @Getter
+    public static final class RecordInfo {
+        private final String key;
+        private final int size;
+
+        private RecordInfo(String key, int size) {
+            this.key = key;
+            this.size = size;
+        }
+    }
+
+    /** Position of a record in the log, and whether its payload is in the legacy format. */
+    @Getter
+    private static final class RecordRef {
+        private final long recordOffset;
+        private final int recordLength;
+        private final long payloadOffset;
+        private final int payloadLength;
+        private final boolean legacy;
+
+        private RecordRef(
+                long recordOffset,
+                int recordLength,
+                long payloadOffset,
+                int payloadLength,
+                boolean legacy) {
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.payloadOffset = payloadOffset;
+            this.payloadLength = payloadLength;
+            this.legacy = legacy;
+        }
+    }
+
+    /**
+     * Configuration class for the vault store. Defines where the vault log is stored; the directory
+     * can be set with the {@code credvault.vault.dir} system property.
+     */
+    public static class StoreConfig {
+        public static final String vaultDirectory =
+                System.getProperty("credvault.vault.dir", "vault/");
+        public static final String logFileName = "vault.log";
+    }
+}
@@ -0,0 +1,359 @@
+package io.github.pragwl.store;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.github.pragwl.utility.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Stores vault changes in the background, so callers do not wait for encryption and the disk. This
+ * class implements the Singleton pattern.
+ *
+ * <p>A submitted {@link Batch} is queued in memory and visible to {@link #read} right away. A
+ * background writer flushes the queue every {@code credvault.writebehind.interval} milliseconds,
+ * or as soon as {@code credvault.writebehind.batch} records are pending. Repeated writes of the
+ * same record are coalesced, so only its latest state is encrypted and written. Everything pending
+ * is stored in one {@link VaultStore.Transaction}, which keeps each batch atomic and costs a single
+ * fsync. A failed flush keeps its records queued for the next attempt.
+ *
+ * <p>The queue is flushed by {@link #close()} and, as a last resort, by a shutdown hook. Setting
+ * the interval to {@code 0} disables write-behind: batches are then committed when submitted.
+ */
+@Slf4j
+public final class WriteBehindQueue implements Closeable {
+
+    private static final long DEFAULT_INTERVAL_MILLIS = 1000;
+    private static final int DEFAULT_BATCH_RECORDS = 256;
+
+    private static WriteBehindQueue writeBehindQueue;
+
+    private final long intervalMillis;
+    private final int batchRecords;
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private Map<String, PendingWrite> inFlight = Map.of();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService writer;
+    private volatile long flushCount;
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+
+    private WriteBehindQueue(long intervalMillis, int batchRecords) {
+        if (batchRecords <= 0) {
+            throw new IllegalArgumentException("Write-behind batch size must be positive.");
+        }
+        this.intervalMillis = intervalMillis;
+        this.batchRecords = batchRecords;
+        if (isEnabled()) {
+            writer =
+                    Executors.newSingleThreadScheduledExecutor(
+                            runnable -> {
+                                Thread thread = new Thread(runnable, "vault-write-behind");
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+            writer.scheduleWithFixedDelay(
+                    this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime()
+                    .addShutdownHook(new Thread(this::flushQuietly, "vault-write-behind-exit"));
+            log.info("Write-behind enabled with a flush interval of {} ms", intervalMillis);
+        } else {
+            writer = null;
+        }
+        Metrics.gauge(
+                "credvault_writebehind_queue_depth",
+                "Records waiting to be written.",
+                this::getQueueDepth);
+        Metrics.gauge(
+                "credvault_writebehind_flushes",
+                "Completed write-behind flushes.",
+                this::getFlushCount);
+        Metrics.gauge(
+                "credvault_writebehind_max_flush_seconds",
+                "Duration of the slowest write-behind flush.",
+                () -> maxFlushMillis / 1000.0);
+    }
+
+    /**
+     * Retrieves the singleton instance of `WriteBehindQueue`.
+     *
+     * @return The singleton instance.
+     */
+    public static WriteBehindQueue getInstance() {
+        if (writeBehindQueue == null) {
+            synchronized (WriteBehindQueue.class) {
+                if (writeBehindQueue == null) {
+                    writeBehindQueue =
+                            new WriteBehindQueue(
+                                    Long.getLong(
+                                            "credvault.writebehind.interval",
+                                            DEFAULT_INTERVAL_MILLIS),
+                                    Integer.getInteger(
+                                            "credvault.writebehind.batch",
+                                            DEFAULT_BATCH_RECORDS));
+                }
+            }
+        }
+        return writeBehindQueue;
+    }
+
+    /**
+     * Checks whether changes are written in the background.
+     *
+     * @return `true` if a positive flush interval is configured.
+     */
+    public boolean isEnabled() {
+        return intervalMillis > 0;
+    }
+
+    /**
+     * Starts a batch. Its puts and deletes are stored together once it is submitted.
+     *
+     * @return A new batch.
+     */
+    public Batch begin() {
+        return new Batch();
+    }
+
+    /**
+     * Reads the latest state of a record, including changes that are not written yet.
+     *
+     * @param section The section the record belongs to.
+     * @param key The key of the record.
+     * @return The object, or `null` if the record does not exist, is pending deletion or cannot be
+     *     read.
+     * @throws RuntimeException if decryption fails.
+     */
+    public Object read(VaultStore.Section section, String key) {
+        String recordName = recordName(section, key);
+        synchronized (pending) {
+            PendingWrite write = pending.get(recordName);
+            if (write == null) {
+                write = inFlight.get(recordName);
+            }
+            if (write != null) {
+                return write.obj;
+            }
+        }
+        return VaultStore.getInstance().read(section, key);
+    }
+
+    /**
+     * Writes everything pending and waits until it is durable.
+     *
+     * @throws RuntimeException if the write fails. The records stay queued.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, PendingWrite> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new LinkedHashMap<>(pending);
+                inFlight = batch;
+                pending.clear();
+            }
+
+            long start = System.nanoTime();
+            try {
+                VaultStore.Transaction transaction = VaultStore.getInstance().begin();
+                batch.values().forEach(write -> write.applyTo(transaction));
+                transaction.commit();
+            } catch (RuntimeException e) {
+                requeue(batch);
+                log.error(
+                        "Failed to flush {} pending vault records: {}",
+                        batch.size(),
+                        e.getMessage());
+                throw e;
+            }
+            synchronized (pending) {
+                inFlight = Map.of();
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            lastFlushMillis = elapsedMillis;
+            maxFlushMillis = Math.max(maxFlushMillis, elapsedMillis);
+            flushCount++;
+            log.info("Flushed {} vault records in {} ms", batch.size(), elapsedMillis);
+        }
+    }
+
+    /**
+     * Returns the number of records waiting to be written, including a flush in progress.
+     *
+     * @return The queue depth.
+     */
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size() + inFlight.size();
+        }
+    }
+
+    /**
+     * Returns the number of completed flushes.
+     *
+     * @return The flush count.
+     */
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Returns how long the latest completed flush took.
+     *
+     * @return The flush latency in milliseconds.
+     */
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    /**
+     * Returns how long the slowest completed flush took.
+     *
+     * @return The flush latency in milliseconds.
+     */
+    public long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+    /**
+     * Flushes everything pending and stops the background writer.
+     *
+     * @throws RuntimeException if the final flush fails. The records are then lost.
+     */
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+        flush();
+        log.info(
+                "Write-behind stopped after {} flushes (last {} ms, max {} ms)",
+                flushCount,
+                lastFlushMillis,
+                maxFlushMillis);
+    }
+
+    private void submit(List<PendingWrite> writes) {
+        if (!isEnabled()) {
+            VaultStore.Transaction transaction = VaultStore.getInstance().begin();
+            writes.forEach(write -> write.applyTo(transaction));
+            transaction.commit();
+            return;
+        }
+        int depth;
+        synchronized (pending) {
+            for (PendingWrite write : writes) {
+                // Re-inserting moves the record behind older changes of other records
+                String recordName = recordName(write.section, write.key);
+                pending.remove(recordName);
+                pending.put(recordName, write);
+            }
+            depth = pending.size();
+        }
+        if (depth >= batchRecords && flushScheduled.compareAndSet(false, true)) {
+            writer.execute(
+                    () -> {
+                        flushScheduled.set(false);
+                        flushQuietly();
+                    });
+        }
+    }
+
+    /** Puts the records of a failed flush back in front of the changes submitted meanwhile. */
+    private void requeue(Map<String, PendingWrite> batch) {
+        synchronized (pending) {
+            Map<String, PendingWrite> requeued = new LinkedHashMap<>(batch);
+            requeued.keySet().removeAll(pending.keySet());
+            requeued.putAll(pending);
+            pending.clear();
+            pending.putAll(requeued);
+            inFlight = Map.of();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // Logged by flush, the records are retried on the next flush
+        }
+    }
+
+    private static String recordName(VaultStore.Section section, String key) {
+        return section + "/" + key;
+    }
+
+    /**
+     * A group of puts and deletes that is queued as a whole on {@link #submit()}. Objects are
+     * encrypted when they are flushed, so they must not be modified after submitting.
+     */
+    public final class Batch implements RecordWriter {
+        private final List<PendingWrite> writes = new ArrayList<>();
+        private boolean submitted;
+
+        private Batch() {}
+
+        @Override
+        public Batch put(VaultStore.Section section, String key, Object obj) {
+            checkOpen();
+            writes.add(new PendingWrite(section, key, obj));
+            return this;
+        }
+
+        @Override
+        public Batch delete(VaultStore.Section section, String key) {
+            checkOpen();
+            writes.add(new PendingWrite(section, key, null));
+            return this;
+        }
+
+        /**
+         * Queues the batch, or commits it right away if write-behind is disabled.
+         *
+         * @throws RuntimeException if write-behind is disabled and the commit fails.
+         */
+        public void submit() {
+            checkOpen();
+            submitted = true;
+            WriteBehindQueue.this.submit(writes);
+        }
+
+        private void checkOpen() {
+            if (submitted) {
+                throw new IllegalStateException("Batch already submitted.");
+            }
+        }
+    }
+
+    /** A put of an object, or a delete if there is no object. */
+    private static final class PendingWrite {
+        private final VaultStore.Section section;
+        private final String key;
+        private final Object obj;
+
+        private PendingWrite(VaultStore.Section section, String key, Object obj) {
+            this.section = section;
+            this.key = key;
+            this.obj = obj;
+        }
+
+        private void applyTo(RecordWriter writer) {
+            if (obj == null) {
+                writer.delete(section, key);
+            } else {
+                writer.put(section, key, obj);
+            }
+        }
+    }
+}
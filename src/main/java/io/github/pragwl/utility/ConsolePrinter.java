@@ -30,25 +30,60 @@ public final class ConsolePrinter {
             return;
         }
 
+        printRows(objects, ignoredFields, 1);
+
+        SCANNER.nextLine(); // Wait for user to press Enter before continuing
+    }
+
+    /**
+     * Prints one page of a larger table, numbering the rows from the given row number.
+     *
+     * @param objects The objects of the page.
+     * @param ignoredFields A list of field names to ignore.
+     * @param firstRowNumber The number of the first row of the page.
+     * @param hasMorePages Whether further pages follow this one.
+     * @param <T> The type of the objects in the list.
+     * @return `true` if the user asked for the next page, `false` otherwise.
+     */
+    public static <T> boolean printTablePage(
+            List<T> objects, List<String> ignoredFields, int firstRowNumber, boolean hasMorePages) {
+        if (objects == null || objects.isEmpty()) {
+            printWarningMessage("List is empty.");
+            return false;
+        }
+
+        printRows(objects, ignoredFields, firstRowNumber);
+
+        if (!hasMorePages) {
+            SCANNER.nextLine(); // Wait for user to press Enter before continuing
+            return false;
+        }
+        System.out.println("Press Enter for the next page, or q to stop.");
+        return !"q".equalsIgnoreCase(SCANNER.nextLine().trim());
+    }
+
+    private static <T> void printRows(List<T> objects, List<String> ignoredFields, int firstRowNumber) {
         Class<?> clazz = objects.get(0).getClass();
         Field[] fields = clazz.getDeclaredFields();
 
         // Calculate maximum column widths
-        Map<String, Integer> columnWidths = calculateColumnWidths(objects, fields, ignoredFields);
+        Map<String, Integer> columnWidths =
+                calculateColumnWidths(objects, fields, ignoredFields, firstRowNumber);
 
         // Print table header
         printTableHeader(fields, columnWidths, ignoredFields);
 
         // Print table content
-        printTableContent(objects, fields, columnWidths, ignoredFields);
-
-        SCANNER.nextLine(); // Wait for user to press Enter before continuing
+        printTableContent(objects, fields, columnWidths, ignoredFields, firstRowNumber);
     }
 
     private static <T> Map<String, Integer> calculateColumnWidths(
-            List<T> objects, Field[] fields, List<String> ignoredFields) {
+            List<T> objects, Field[] fields, List<String> ignoredFields, int firstRowNumber) {
         Map<String, Integer> columnWidths = new HashMap<>();
-        columnWidths.put(INDEX_COLUMN_HEADER, INDEX_COLUMN_HEADER.length());
+        int lastRowNumber = firstRowNumber + objects.size() - 1;
+        columnWidths.put(
+                INDEX_COLUMN_HEADER,
+                Math.max(INDEX_COLUMN_HEADER.length(), String.valueOf(lastRowNumber).length()));
 
         for (Field field : fields) {
             if (!ignoredFields.contains(field.getName())) {
@@ -93,8 +128,12 @@ public final class ConsolePrinter {
     }
 
     private static <T> void printTableContent(
-            List<T> objects, Field[] fields, Map<String, Integer> columnWidths, List<String> ignoredFields) {
-        int rowCount = 1;
+            List<T> objects,
+            Field[] fields,
+            Map<String, Integer> columnWidths,
+            List<String> ignoredFields,
+            int firstRowNumber) {
+        int rowCount = firstRowNumber;
         for (Object obj : objects) {
             System.out.print(
                     padRight(
@@ -0,0 +1,224 @@
+package io.github.pragwl.utility;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Per-thread pool of JCA engine instances. Looking up a provider and constructing a {@link
+ * Cipher}, {@link MessageDigest}, {@link Mac} or {@link SecretKeyFactory} costs more than using
+ * one on a small record, so every thread keeps one instance per algorithm and reuses it. The
+ * loader, writer and rotation workers are long-lived, so each of them builds its engines once.
+ *
+ * <p>An instance returned by this class belongs to the calling thread. Callers must initialize
+ * a cipher or MAC on every use, must finish with it before calling code that may borrow the same
+ * algorithm, and must neither keep it nor hand it to another thread. Message digests are reset
+ * before they are returned.
+ *
+ * <p>An initialized cipher or MAC holds its key schedule, and a cipher also a copy of the key, for
+ * as long as it is pooled. Callers must therefore hand it back to {@link #release(Cipher)} or
+ * {@link #release(Mac)} once done, which initializes it with a throwaway key, and {@link #clear()}
+ * drops the engines of every thread when the vault locks.
+ */
+public final class CryptoPool {
+
+    private static final int GCM_TAG_LENGTH = 128;
+    private static final int GCM_NONCE_LENGTH = 12;
+    /** All zero, so it never equals a real key derived from a secret or drawn at random. */
+    private static final byte[] THROWAWAY_KEY = new byte[32];
+
+    /** The engines of every live thread, so that {@link #clear()} reaches all of them. */
+    private static final Set<Engines> POOLS =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private static final ThreadLocal<Engines> ENGINES =
+            ThreadLocal.withInitial(
+                    () -> {
+                        Engines engines = new Engines();
+                        POOLS.add(engines);
+                        return engines;
+                    });
+
+    private CryptoPool() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Returns the calling thread's cipher for the given transformation. It must be initialized
+     * before use.
+     *
+     * @param transformation The cipher transformation, for example {@code AES/GCM/NoPadding}.
+     * @return The cipher of the calling thread.
+     * @throws GeneralSecurityException if the transformation is not available.
+     */
+    public static Cipher cipher(String transformation) throws GeneralSecurityException {
+        Map<String, Cipher> ciphers = ENGINES.get().ciphers;
+        Cipher cipher = ciphers.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Returns the calling thread's message digest for the given algorithm, reset to its initial
+     * state.
+     *
+     * @param algorithm The digest algorithm, for example {@code SHA-256}.
+     * @return The message digest of the calling thread.
+     * @throws NoSuchAlgorithmException if the algorithm is not available.
+     */
+    public static MessageDigest messageDigest(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> digests = ENGINES.get().digests;
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, digest);
+        } else {
+            // A previous caller may have failed halfway through an update
+            digest.reset();
+        }
+        return digest;
+    }
+
+    /**
+     * Returns the calling thread's SHA-256 digest, reset to its initial state.
+     *
+     * @return The SHA-256 digest of the calling thread.
+     * @throws IllegalStateException if SHA-256 is not available.
+     */
+    public static MessageDigest sha256() {
+        try {
+            return messageDigest("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not found.", e);
+        }
+    }
+
+    /**
+     * Returns the calling thread's MAC for the given algorithm. It must be initialized before use.
+     *
+     * @param algorithm The MAC algorithm, for example {@code HmacSHA256}.
+     * @return The MAC of the calling thread.
+     * @throws NoSuchAlgorithmException if the algorithm is not available.
+     */
+    public static Mac mac(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, Mac> macs = ENGINES.get().macs;
+        Mac mac = macs.get(algorithm);
+        if (mac == null) {
+            mac = Mac.getInstance(algorithm);
+            macs.put(algorithm, mac);
+        }
+        return mac;
+    }
+
+    /**
+     * Returns the calling thread's secret key factory for the given algorithm.
+     *
+     * @param algorithm The key factory algorithm, for example {@code PBKDF2WithHmacSHA256}.
+     * @return The secret key factory of the calling thread.
+     * @throws NoSuchAlgorithmException if the algorithm is not available.
+     */
+    public static SecretKeyFactory secretKeyFactory(String algorithm)
+            throws NoSuchAlgorithmException {
+        Map<String, SecretKeyFactory> keyFactories = ENGINES.get().keyFactories;
+        SecretKeyFactory keyFactory = keyFactories.get(algorithm);
+        if (keyFactory == null) {
+            keyFactory = SecretKeyFactory.getInstance(algorithm);
+            keyFactories.put(algorithm, keyFactory);
+        }
+        return keyFactory;
+    }
+
+    /**
+     * Wipes the key from a cipher borrowed from this pool by initializing it with a throwaway key.
+     * GCM ciphers are initialized for encryption, the only mode that replaces the copy of the last
+     * encryption key they keep to refuse nonce reuse. A cipher that cannot be initialized is
+     * dropped from the pool instead.
+     *
+     * @param cipher The AES cipher of the calling thread, once done with it.
+     */
+    public static void release(Cipher cipher) {
+        Engines engines = ENGINES.get();
+        SecretKeySpec throwawayKey = new SecretKeySpec(THROWAWAY_KEY, "AES");
+        try {
+            if (cipher.getAlgorithm().contains("/GCM/")) {
+                cipher.init(
+                        Cipher.ENCRYPT_MODE,
+                        throwawayKey,
+                        new GCMParameterSpec(GCM_TAG_LENGTH, engines.nextThrowawayNonce()));
+            } else {
+                cipher.init(Cipher.DECRYPT_MODE, throwawayKey);
+            }
+        } catch (GeneralSecurityException e) {
+            engines.ciphers.values().remove(cipher);
+        }
+    }
+
+    /**
+     * Wipes the key from a MAC borrowed from this pool by initializing it with a throwaway key. A
+     * MAC that cannot be initialized is dropped from the pool instead.
+     *
+     * @param mac The MAC of the calling thread, once done with it.
+     */
+    public static void release(Mac mac) {
+        try {
+            mac.init(new SecretKeySpec(THROWAWAY_KEY, mac.getAlgorithm()));
+        } catch (GeneralSecurityException e) {
+            ENGINES.get().macs.values().remove(mac);
+        }
+    }
+
+    /**
+     * Drops the pooled engines of every thread, so that none of them keeps key material once the
+     * vault is locked. Engines still in use are not affected; their threads borrow new ones next
+     * time.
+     */
+    public static void clear() {
+        synchronized (POOLS) {
+            POOLS.forEach(Engines::clear);
+        }
+    }
+
+    /**
+     * The engines of one thread. The maps are only filled by their thread, but {@link #clear()}
+     * empties them from any thread.
+     */
+    private static final class Engines {
+
+        private final Map<String, Cipher> ciphers = new ConcurrentHashMap<>();
+        private final Map<String, MessageDigest> digests = new ConcurrentHashMap<>();
+        private final Map<String, Mac> macs = new ConcurrentHashMap<>();
+        private final Map<String, SecretKeyFactory> keyFactories = new ConcurrentHashMap<>();
+        private long throwawayNonces;
+
+        /**
+         * Returns a nonce never used with the throwaway key by this thread, since GCM refuses to
+         * encrypt twice in a row under the same key and nonce.
+         */
+        private byte[] nextThrowawayNonce() {
+            return ByteBuffer.allocate(GCM_NONCE_LENGTH)
+                    .putLong(GCM_NONCE_LENGTH - Long.BYTES, ++throwawayNonces)
+                    .array();
+        }
+
+        private void clear() {
+            ciphers.clear();
+            digests.clear();
+            macs.clear();
+            keyFactories.clear();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package io.github.pragwl.utility;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Bounded, thread-safe LRU cache of derived AES keys. Entries are keyed by a SHA-256 fingerprint
+ * of the encryption key, salt and iteration count, so the secret itself is never used as a map
+ * key. Key material of evicted entries is zeroed.
+ */
+public final class DerivedKeyCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 256;
+    private static final DerivedKeyCache INSTANCE =
+            new DerivedKeyCache(
+                    Integer.getInteger("credvault.kdf.cache.size", DEFAULT_MAX_ENTRIES));
+
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private DerivedKeyCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Derived key cache size must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.entries =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                        if (size() > DerivedKeyCache.this.maxEntries) {
+                            eldest.getValue().wipe();
+                            evictions.incrementAndGet();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+        Metrics.gauge(
+                "credvault_kdf_cache_hits", "Derived key lookups served from the cache.", hits::get);
+        Metrics.gauge(
+                "credvault_kdf_cache_misses", "Derived key lookups that ran PBKDF2.", misses::get);
+        Metrics.gauge(
+                "credvault_kdf_cache_hit_ratio",
+                "Share of derived key lookups served from the cache.",
+                () -> hits.get() / (double) Math.max(1, hits.get() + misses.get()));
+    }
+
+    /**
+     * Retrieves the shared cache instance.
+     *
+     * @return The shared cache instance.
+     */
+    public static DerivedKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the derived key for the given encryption key, salt and iteration count, running the
+     * deriver only on a cache miss. Concurrent callers missing on the same entry share a single
+     * derivation.
+     *
+     * @param encryptionKey The encryption key the derived key originates from.
+     * @param salt The salt used for the derivation.
+     * @param iterations The iteration count used for the derivation.
+     * @param algorithm The algorithm name of the returned key.
+     * @param deriver Produces the raw key bytes on a cache miss.
+     * @return A key spec holding a copy of the cached key material.
+     * @throws GeneralSecurityException if the derivation fails.
+     */
+    public SecretKeySpec getKey(
+            String encryptionKey, byte[] salt, int iterations, String algorithm, KeyDeriver deriver)
+            throws GeneralSecurityException {
+        String fingerprint = fingerprint(encryptionKey, salt, iterations);
+        while (true) {
+            Entry entry;
+            synchronized (entries) {
+                entry = entries.computeIfAbsent(fingerprint, k -> new Entry());
+            }
+            SecretKeySpec keySpec = entry.keySpec(algorithm, deriver);
+            if (keySpec != null) {
+                return keySpec;
+            }
+            // The entry was evicted or cleared meanwhile, so look up its replacement
+        }
+    }
+
+    /** Removes all entries, zeroing their key material. */
+    public void clear() {
+        synchronized (entries) {
+            entries.values().forEach(Entry::wipe);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that required a key derivation.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of entries evicted because the cache was full.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return The current cache size.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static String fingerprint(String encryptionKey, byte[] salt, int iterations) {
+        MessageDigest digest = CryptoPool.sha256();
+        digest.update(encryptionKey.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(salt);
+        digest.update(ByteBuffer.allocate(4).putInt(iterations).array());
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /** Produces raw key bytes for a cache miss. */
+    @FunctionalInterface
+    public interface KeyDeriver {
+        byte[] derive() throws GeneralSecurityException;
+    }
+
+    /**
+     * A cached key. The derivation runs under its own lock, so concurrent callers missing on the
+     * same entry share it, while the entry monitor is only held to read or wipe the key. Evicting
+     * or clearing an entry therefore never waits for a derivation in progress.
+     */
+    private final class Entry {
+        private final Object derivation = new Object();
+        private byte[] keyBytes;
+        private boolean wiped;
+
+        /**
+         * Returns the key, deriving it first if needed, or `null` if the entry was wiped before the
+         * derivation started. A key derived into an entry wiped meanwhile is returned but not kept,
+         * since the entry is no longer in the cache and would never be wiped again.
+         */
+        SecretKeySpec keySpec(String algorithm, KeyDeriver deriver)
+                throws GeneralSecurityException {
+            SecretKeySpec cached = cachedKeySpec(algorithm);
+            if (cached != null || isWiped()) {
+                return cached;
+            }
+            synchronized (derivation) {
+                cached = cachedKeySpec(algorithm);
+                if (cached != null || isWiped()) {
+                    return cached;
+                }
+                misses.incrementAndGet();
+                byte[] derived = deriver.derive();
+                synchronized (this) {
+                    // SecretKeySpec copies the bytes, so wiping the entry never affects callers
+                    SecretKeySpec keySpec = new SecretKeySpec(derived, algorithm);
+                    if (wiped) {
+                        Arrays.fill(derived, (byte) 0);
+                    } else {
+                        keyBytes = derived;
+                    }
+                    return keySpec;
+                }
+            }
+        }
+
+        private synchronized SecretKeySpec cachedKeySpec(String algorithm) {
+            if (keyBytes == null) {
+                return null;
+            }
+            hits.incrementAndGet();
+            return new SecretKeySpec(keyBytes, algorithm);
+        }
+
+        private synchronized boolean isWiped() {
+            return wiped;
+        }
+
+        synchronized void wipe() {
+            wiped = true;
+            if (keyBytes != null) {
+                Arrays.fill(keyBytes, (byte) 0);
+                keyBytes = null;
+            }
+        }
+    }
+}
@@ -1,21 +1,38 @@
 package io.github.pragwl.utility;
 
-import java.security.spec.KeySpec;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
 import javax.crypto.Cipher;
-import javax.crypto.SecretKey;
+import javax.crypto.Mac;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import lombok.extern.slf4j.Slf4j;
 
-/** Utility class for encrypting and decrypting data using AES encryption. */
+/**
+ * Utility class for encrypting and decrypting data using AES encryption. Key derivations and cipher
+ * operations are timed separately in the {@link Metrics}. Ciphers, MACs and key factories are
+ * borrowed from the calling thread's {@link CryptoPool}, initialized on every call, and ciphers and
+ * MACs are released afterwards so they do not keep the key.
+ */
+@Slf4j
 public class Encryptor {
 
     private static final String KEY_DERIVATION_ALGORITHM = "PBKDF2WithHmacSHA256";
     private static final String ENCRYPTION_ALGORITHM = "AES";
-    private static final int ITERATION_COUNT = 65536;
+    private static final String AEAD_ALGORITHM = "AES/GCM/NoPadding";
+    private static final String HKDF_ALGORITHM = "HmacSHA256";
+    private static final int GCM_TAG_LENGTH = 128;
+    static final int ITERATION_COUNT = 65536;
     private static final int KEY_LENGTH = 256;
+    private static final Metrics.Timer KDF_TIME =
+            Metrics.timer("credvault_kdf_seconds", "Time spent deriving keys with PBKDF2.");
+    private static final Metrics.Timer CIPHER_TIME =
+            Metrics.timer(
+                    "credvault_cipher_seconds",
+                    "Time spent encrypting or decrypting, excluding key derivation.");
 
     private Encryptor() {
         // Private constructor to prevent instantiation
@@ -31,20 +48,21 @@ public class Encryptor {
      */
     public static byte[] encrypt(byte[] inputBytes, byte[] salt, String encryptionKey) {
         try {
-            SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(KEY_DERIVATION_ALGORITHM);
-            KeySpec keySpec =
-                    new PBEKeySpec(encryptionKey.toCharArray(), salt, ITERATION_COUNT, KEY_LENGTH);
-            SecretKey secretKey = keyFactory.generateSecret(keySpec);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(secretKey.getEncoded(), ENCRYPTION_ALGORITHM);
+            SecretKeySpec secretKeySpec = deriveKey(salt, encryptionKey);
+            long start = Metrics.start();
 
-            Cipher cipher = Cipher.getInstance(ENCRYPTION_ALGORITHM);
+            Cipher cipher = CryptoPool.cipher(ENCRYPTION_ALGORITHM);
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);
 
-            cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);
-
-            return Base64.getEncoder().encode(cipher.doFinal(inputBytes));
+                byte[] encrypted = Base64.getEncoder().encode(cipher.doFinal(inputBytes));
+                CIPHER_TIME.stop(start);
+                return encrypted;
+            } finally {
+                CryptoPool.release(cipher);
+            }
         } catch (Exception e) {
-            System.err.println("Encryption failed: " + e.getMessage()); // Log the exception message
-            System.err.println(Arrays.toString(e.getStackTrace()));
+            log.error("Encryption failed: {}", e.getMessage(), e);
             return null;
         }
     }
@@ -59,22 +77,381 @@ public class Encryptor {
      */
     public static byte[] decrypt(byte[] encryptedBytes, byte[] salt, String encryptionKey) {
         try {
+            SecretKeySpec secretKeySpec = deriveKey(salt, encryptionKey);
+            long start = Metrics.start();
+
+            Cipher cipher = CryptoPool.cipher(ENCRYPTION_ALGORITHM);
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
+
+                byte[] decrypted = cipher.doFinal(Base64.getDecoder().decode(encryptedBytes));
+                CIPHER_TIME.stop(start);
+                return decrypted;
+            } finally {
+                CryptoPool.release(cipher);
+            }
+        } catch (Exception e) {
+            log.error("Decryption failed: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Decrypts Base64 encoded ciphertext held in a buffer, writing the plaintext into the given
+     * output buffer. The input buffer's position is left untouched, so it can be a shared slice of
+     * a memory-mapped file.
+     *
+     * @param encryptedBuffer The buffer holding the encrypted data between position and limit.
+     * @param outputBuffer The buffer to reuse for the plaintext.
+     * @param salt The salt to use for decryption.
+     * @param encryptionKey The encryption key to use.
+     * @return A buffer holding the plaintext between position and limit: the given output buffer,
+     *     or a larger one if it was too small. `null` if an error occurs.
+     */
+    public static ByteBuffer decrypt(
+            ByteBuffer encryptedBuffer,
+            ByteBuffer outputBuffer,
+            byte[] salt,
+            String encryptionKey) {
+        try {
+            SecretKeySpec secretKeySpec = deriveKey(salt, encryptionKey);
+            long start = Metrics.start();
 
-            SecretKeyFactory keyFactory = SecretKeyFactory.getInstance(KEY_DERIVATION_ALGORITHM);
-            KeySpec keySpec =
-                    new PBEKeySpec(encryptionKey.toCharArray(), salt, ITERATION_COUNT, KEY_LENGTH);
-            SecretKey secretKey = keyFactory.generateSecret(keySpec);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(secretKey.getEncoded(), ENCRYPTION_ALGORITHM);
+            Cipher cipher = CryptoPool.cipher(ENCRYPTION_ALGORITHM);
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
 
-            Cipher cipher = Cipher.getInstance(ENCRYPTION_ALGORITHM);
+                ByteBuffer cipherText = Base64.getDecoder().decode(encryptedBuffer.duplicate());
+                int requiredCapacity = cipher.getOutputSize(cipherText.remaining());
+                ByteBuffer output =
+                        outputBuffer.capacity() >= requiredCapacity
+                                ? outputBuffer.clear()
+                                : ByteBuffer.allocate(requiredCapacity);
+                cipher.doFinal(cipherText, output);
+                CIPHER_TIME.stop(start);
+                return output.flip();
+            } finally {
+                CryptoPool.release(cipher);
+            }
+        } catch (Exception e) {
+            log.error("Decryption failed: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Encrypts the given byte array using AES-GCM. The result is the raw ciphertext followed by the
+     * authentication tag, without any encoding.
+     *
+     * @param inputBytes The byte array to encrypt.
+     * @param iv The unique nonce of this encryption.
+     * @param associatedData Data authenticated along with the ciphertext but not encrypted.
+     * @param salt The salt to use for the key derivation.
+     * @param iterations The PBKDF2 iteration count to use for the key derivation.
+     * @param encryptionKey The encryption key to use.
+     * @return The encrypted byte array, or `null` if an error occurs.
+     */
+    public static byte[] encryptAead(
+            byte[] inputBytes,
+            byte[] iv,
+            byte[] associatedData,
+            byte[] salt,
+            int iterations,
+            String encryptionKey) {
+        try {
+            SecretKeySpec secretKeySpec = deriveKey(salt, encryptionKey, iterations);
+            long start = Metrics.start();
 
-            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
+            Cipher cipher = CryptoPool.cipher(AEAD_ALGORITHM);
+            try {
+                cipher.init(
+                        Cipher.ENCRYPT_MODE,
+                        secretKeySpec,
+                        new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+                cipher.updateAAD(associatedData);
 
-            return cipher.doFinal(Base64.getDecoder().decode(encryptedBytes));
+                byte[] encrypted = cipher.doFinal(inputBytes);
+                CIPHER_TIME.stop(start);
+                return encrypted;
+            } finally {
+                CryptoPool.release(cipher);
+            }
         } catch (Exception e) {
-            System.err.println("Decryption failed: " + e.getMessage()); // Log the exception message
-            System.err.println(Arrays.toString(e.getStackTrace()));
+            log.error("Encryption failed: {}", e.getMessage(), e);
             return null;
         }
     }
+
+    /**
+     * Decrypts and authenticates AES-GCM ciphertext held in a buffer, writing the plaintext into
+     * the given output buffer. The input buffer's position is left untouched.
+     *
+     * @param encryptedBuffer The buffer holding the ciphertext and tag between position and limit.
+     * @param outputBuffer The buffer to reuse for the plaintext.
+     * @param iv The nonce the data was encrypted with.
+     * @param associatedData The associated data the ciphertext was authenticated with.
+     * @param salt The salt to use for the key derivation.
+     * @param iterations The PBKDF2 iteration count to use for the key derivation.
+     * @param encryptionKey The encryption key to use.
+     * @return A buffer holding the plaintext between position and limit: the given output buffer,
+     *     or a larger one if it was too small. `null` if an error occurs or authentication fails.
+     */
+    public static ByteBuffer decryptAead(
+            ByteBuffer encryptedBuffer,
+            ByteBuffer outputBuffer,
+            byte[] iv,
+            byte[] associatedData,
+            byte[] salt,
+            int iterations,
+            String encryptionKey) {
+        try {
+            SecretKeySpec secretKeySpec = deriveKey(salt, encryptionKey, iterations);
+            long start = Metrics.start();
+
+            Cipher cipher = CryptoPool.cipher(AEAD_ALGORITHM);
+            try {
+                cipher.init(
+                        Cipher.DECRYPT_MODE,
+                        secretKeySpec,
+                        new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+                cipher.updateAAD(associatedData);
+
+                ByteBuffer cipherText = encryptedBuffer.duplicate();
+                int requiredCapacity = cipher.getOutputSize(cipherText.remaining());
+                ByteBuffer output =
+                        outputBuffer.capacity() >= requiredCapacity
+                                ? outputBuffer.clear()
+                                : ByteBuffer.allocate(requiredCapacity);
+                cipher.doFinal(cipherText, output);
+                CIPHER_TIME.stop(start);
+                return output.flip();
+            } finally {
+                CryptoPool.release(cipher);
+            }
+        } catch (Exception e) {
+            log.error("Decryption failed: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Encrypts the given byte array using AES-GCM directly under a full-entropy key, without any
+     * key derivation. The result is the raw ciphertext followed by the authentication tag.
+     *
+     * @param inputBytes The byte array to encrypt.
+     * @param iv The unique nonce of this encryption.
+     * @param key The raw AES key.
+     * @return The encrypted byte array, or `null` if an error occurs.
+     */
+    public static byte[] encryptAead(byte[] inputBytes, byte[] iv, byte[] key) {
+        return encryptAead(inputBytes, iv, new byte[0], key);
+    }
+
+    /**
+     * Encrypts the given byte array using AES-GCM directly under a full-entropy key, without any
+     * key derivation. The result is the raw ciphertext followed by the authentication tag.
+     *
+     * @param inputBytes The byte array to encrypt.
+     * @param iv The unique nonce of this encryption.
+     * @param associatedData Data authenticated along with the ciphertext but not encrypted.
+     * @param key The raw AES key.
+     * @return The encrypted byte array, or `null` if an error occurs.
+     */
+    public static byte[] encryptAead(
+            byte[] inputBytes, byte[] iv, byte[] associatedData, byte[] key) {
+        try {
+            long start = Metrics.start();
+
+            Cipher cipher = CryptoPool.cipher(AEAD_ALGORITHM);
+            try {
+                cipher.init(
+                        Cipher.ENCRYPT_MODE,
+                        new SecretKeySpec(key, ENCRYPTION_ALGORITHM),
+                        new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+                cipher.updateAAD(associatedData);
+
+                byte[] encrypted = cipher.doFinal(inputBytes);
+                CIPHER_TIME.stop(start);
+                return encrypted;
+            } finally {
+                CryptoPool.release(cipher);
+            }
+        } catch (Exception e) {
+            log.error("Encryption failed: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Decrypts and authenticates AES-GCM ciphertext encrypted with {@link #encryptAead(byte[],
+     * byte[], byte[])}.
+     *
+     * @param encryptedBytes The ciphertext followed by the authentication tag.
+     * @param iv The nonce the data was encrypted with.
+     * @param key The raw AES key.
+     * @return The decrypted byte array, or `null` if an error occurs or authentication fails.
+     */
+    public static byte[] decryptAead(byte[] encryptedBytes, byte[] iv, byte[] key) {
+        try {
+            long start = Metrics.start();
+
+            Cipher cipher = CryptoPool.cipher(AEAD_ALGORITHM);
+            try {
+                cipher.init(
+                        Cipher.DECRYPT_MODE,
+                        new SecretKeySpec(key, ENCRYPTION_ALGORITHM),
+                        new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+
+                byte[] decrypted = cipher.doFinal(encryptedBytes);
+                CIPHER_TIME.stop(start);
+                return decrypted;
+            } finally {
+                CryptoPool.release(cipher);
+            }
+        } catch (Exception e) {
+            log.error("Decryption failed: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Decrypts and authenticates AES-GCM ciphertext held in a buffer under a full-entropy key,
+     * writing the plaintext into the given output buffer. The input buffer's position is left
+     * untouched.
+     *
+     * @param encryptedBuffer The buffer holding the ciphertext and tag between position and limit.
+     * @param outputBuffer The buffer to reuse for the plaintext.
+     * @param iv The nonce the data was encrypted with.
+     * @param associatedData The associated data the ciphertext was authenticated with.
+     * @param key The raw AES key.
+     * @return A buffer holding the plaintext between position and limit: the given output buffer,
+     *     or a larger one if it was too small. `null` if an error occurs or authentication fails.
+     */
+    public static ByteBuffer decryptAead(
+            ByteBuffer encryptedBuffer,
+            ByteBuffer outputBuffer,
+            byte[] iv,
+            byte[] associatedData,
+            byte[] key) {
+        try {
+            long start = Metrics.start();
+
+            Cipher cipher = CryptoPool.cipher(AEAD_ALGORITHM);
+            try {
+                cipher.init(
+                        Cipher.DECRYPT_MODE,
+                        new SecretKeySpec(key, ENCRYPTION_ALGORITHM),
+                        new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+                cipher.updateAAD(associatedData);
+
+                ByteBuffer cipherText = encryptedBuffer.duplicate();
+                int requiredCapacity = cipher.getOutputSize(cipherText.remaining());
+                ByteBuffer output =
+                        outputBuffer.capacity() >= requiredCapacity
+                                ? outputBuffer.clear()
+                                : ByteBuffer.allocate(requiredCapacity);
+                cipher.doFinal(cipherText, output);
+                CIPHER_TIME.stop(start);
+                return output.flip();
+            } finally {
+                CryptoPool.release(cipher);
+            }
+        } catch (Exception e) {
+            log.error("Decryption failed: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Derives a master key with PBKDF2, bypassing the {@link DerivedKeyCache}.
+     *
+     * @param secret The secret to derive from.
+     * @param salt The salt to use for the key derivation.
+     * @param iterations The PBKDF2 iteration count.
+     * @return The raw 256-bit key.
+     * @throws IllegalStateException if the key derivation fails.
+     */
+    public static byte[] deriveMasterKey(String secret, byte[] salt, int iterations) {
+        PBEKeySpec keySpec = new PBEKeySpec(secret.toCharArray(), salt, iterations, KEY_LENGTH);
+        long start = Metrics.start();
+        try {
+            return CryptoPool.secretKeyFactory(KEY_DERIVATION_ALGORITHM)
+                    .generateSecret(keySpec)
+                    .getEncoded();
+        } catch (GeneralSecurityException e) {
+            log.error("Key derivation failed: {}", e.getMessage(), e);
+            throw new IllegalStateException("Key derivation failed: " + e.getMessage(), e);
+        } finally {
+            keySpec.clearPassword();
+            KDF_TIME.stop(start);
+        }
+    }
+
+    /**
+     * Expands a 256-bit subkey from a pseudorandom key with HKDF-Expand (RFC 5869) over
+     * HMAC-SHA256. A single output block is needed, so this is one HMAC computation.
+     *
+     * @param pseudoRandomKey The pseudorandom key, for example a master key.
+     * @param info The context and application specific information.
+     * @return The raw 256-bit subkey.
+     * @throws IllegalStateException if HMAC-SHA256 is not available.
+     */
+    public static byte[] expandKey(byte[] pseudoRandomKey, byte[] info) {
+        try {
+            Mac mac = CryptoPool.mac(HKDF_ALGORITHM);
+            try {
+                mac.init(new SecretKeySpec(pseudoRandomKey, HKDF_ALGORITHM));
+                mac.update(info);
+                mac.update((byte) 1);
+                return mac.doFinal();
+            } finally {
+                // The master key must not outlive MasterKey.destroy() in the pooled MAC
+                CryptoPool.release(mac);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Key expansion failed: " + e.getMessage(), e);
+        }
+    }
+
+    private static SecretKeySpec deriveKey(byte[] salt, String encryptionKey)
+            throws GeneralSecurityException {
+        return deriveKey(salt, encryptionKey, ITERATION_COUNT);
+    }
+
+    /**
+     * Derives the AES key for the given salt, encryption key and iteration count. PBKDF2 only runs
+     * when the key is not already held by the {@link DerivedKeyCache}.
+     *
+     * @param salt The salt to use for the key derivation.
+     * @param encryptionKey The encryption key to derive from.
+     * @param iterations The PBKDF2 iteration count.
+     * @return The derived AES key.
+     * @throws GeneralSecurityException if the key derivation fails.
+     */
+    private static SecretKeySpec deriveKey(byte[] salt, String encryptionKey, int iterations)
+            throws GeneralSecurityException {
+        return DerivedKeyCache.getInstance()
+                .getKey(
+                        encryptionKey,
+                        salt,
+                        iterations,
+                        ENCRYPTION_ALGORITHM,
+                        () -> {
+                            SecretKeyFactory keyFactory =
+                                    CryptoPool.secretKeyFactory(KEY_DERIVATION_ALGORITHM);
+                            PBEKeySpec keySpec =
+                                    new PBEKeySpec(
+                                            encryptionKey.toCharArray(),
+                                            salt,
+                                            iterations,
+                                            KEY_LENGTH);
+                            long start = Metrics.start();
+                            try {
+                                return keyFactory.generateSecret(keySpec).getEncoded();
+                            } finally {
+                                keySpec.clearPassword();
+                                KDF_TIME.stop(start);
+                            }
+                        });
+    }
 }
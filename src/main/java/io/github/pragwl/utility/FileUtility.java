@@ -12,10 +12,13 @@ import java.util.Objects;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
-/** Utility class for file operations. */
+/** Utility class for file operations. Operations are timed in the {@link Metrics}. */
 @Slf4j
 public final class FileUtility {
 
+    private static final Metrics.Timer FILE_IO_TIME =
+            Metrics.timer("credvault_file_io_seconds", "Time spent reading and writing files.");
+
     private FileUtility() {
         // Private constructor to prevent instantiation
     }
@@ -27,6 +30,17 @@ public final class FileUtility {
      * @return A list of file names, or an empty list if the directory does not exist or is empty.
      */
     public static List<String> getFilesListFromDirectory(String directoryName) {
+        return listFiles(directoryName).stream().map(File::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves the regular files of the given directory. Only the directory listing and file
+     * attributes are read, not the file contents.
+     *
+     * @param directoryName The name of the directory.
+     * @return A list of files, or an empty list if the directory does not exist or is empty.
+     */
+    public static List<File> listFiles(String directoryName) {
         if (directoryName == null || directoryName.isEmpty()) {
             log.warn("Directory name is null or empty.");
             return Collections.emptyList();
@@ -43,16 +57,15 @@ public final class FileUtility {
             return Collections.emptyList();
         }
 
+        long start = Metrics.start();
         File[] files = directory.listFiles();
+        FILE_IO_TIME.stop(start);
         if (files == null) {
             log.warn("Error listing files in directory: {}", directoryName);
             return Collections.emptyList();
         }
 
-        return Arrays.stream(files)
-                .filter(File::isFile)
-                .map(File::getName)
-                .collect(Collectors.toList());
+        return Arrays.stream(files).filter(File::isFile).collect(Collectors.toList());
     }
 
     /**
@@ -67,6 +80,7 @@ public final class FileUtility {
         Path sourcePath = Paths.get(sourceFolder, fileName);
         Path destinationPath = Paths.get(destinationFolder, fileName);
 
+        long start = Metrics.start();
         try {
             // Create destination folder if it doesn't exist
             if (!Files.exists(destinationPath.getParent())) {
@@ -80,6 +94,8 @@ public final class FileUtility {
         } catch (IOException e) {
             log.error("Failed to move file from {} to {}: {}", sourcePath, destinationPath, e.getMessage());
             throw new RuntimeException("Failed to move file: " + e.getMessage(), e); // Include the exception
+        } finally {
+            FILE_IO_TIME.stop(start);
         }
     }
 
@@ -97,7 +113,9 @@ public final class FileUtility {
             return false;
         }
 
+        long start = Metrics.start();
         boolean deleted = file.delete();
+        FILE_IO_TIME.stop(start);
         if (deleted) {
             log.info("Deleted file: {}", filePath);
         } else {
@@ -1,14 +1,21 @@
 package io.github.pragwl.utility;
 
-import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import lombok.extern.slf4j.Slf4j;
 
-/** Utility class for generating hash values. */
-@Slf4j
+/**
+ * Utility class for generating hash values. Hashes are computed by a per-thread {@link Hasher},
+ * which encodes its input as UTF-8 straight into the digest and hex encodes the result through a
+ * lookup table, so the only allocation is the returned string.
+ */
 public final class HashUtility {
 
+    /** Length of a SHA-256 hash in bytes. */
+    public static final int HASH_LENGTH = 32;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final ThreadLocal<Hasher> HASHERS = ThreadLocal.withInitial(Hasher::new);
+
     private HashUtility() {
         // Private constructor to prevent instantiation
     }
@@ -17,28 +24,206 @@ public final class HashUtility {
      * Generates an SHA-256 hash of the given string.
      *
      * @param input The string to hash.
-     * @return The SHA-256 hash of the input string, or `null` if an error occurs.
+     * @return The SHA-256 hash of the input string as lowercase hex.
+     * @throws IllegalStateException if SHA-256 is not available.
      */
     public static String hash(String input) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-
-            // Convert byte array to hexadecimal string
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
+        return hasher().update(input).hex();
+    }
+
+    /**
+     * Returns the calling thread's hasher, reset to hash a new input. The input fields are hashed
+     * as if they were concatenated into a single string, so the result matches {@link
+     * #hash(String)} of that string. The hasher must not be kept or handed to another thread.
+     *
+     * @return The hasher of the calling thread.
+     * @throws IllegalStateException if SHA-256 is not available.
+     */
+    public static Hasher hasher() {
+        return HASHERS.get().reset();
+    }
+
+    /**
+     * Encodes a binary hash as lowercase hex, the form used for file names.
+     *
+     * @param hash The hash to encode.
+     * @return The hex encoded hash.
+     */
+    public static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        encodeHex(hash, 0, hash.length, hex);
+        return new String(hex);
+    }
+
+    private static void encodeHex(byte[] bytes, int offset, int length, char[] hex) {
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xff;
+            hex[i * 2] = HEX_DIGITS[b >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[b & 0x0f];
+        }
+    }
+
+    /**
+     * Streams strings and numbers into a SHA-256 digest as UTF-8, without building the
+     * concatenated string or its byte array. Unpaired surrogates are encoded as {@code '?'}, as
+     * {@link String#getBytes(java.nio.charset.Charset)} does.
+     */
+    public static final class Hasher {
+
+        private final byte[] buffer = new byte[256];
+        private final byte[] hash = new byte[HASH_LENGTH];
+        private final char[] hex = new char[HASH_LENGTH * 2];
+        private MessageDigest digest;
+        private int position;
+        private char highSurrogate;
+
+        private Hasher() {}
+
+        private Hasher reset() {
+            digest = CryptoPool.sha256();
+            position = 0;
+            highSurrogate = 0;
+            return this;
+        }
+
+        /**
+         * Appends a string. A `null` string is appended as {@code "null"}, as in concatenation.
+         *
+         * @param value The string to append.
+         * @return This hasher.
+         */
+        public Hasher update(CharSequence value) {
+            if (value == null) {
+                return update("null");
+            }
+            for (int i = 0; i < value.length(); i++) {
+                append(value.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Appends the decimal form of a number. A `null` number is appended as {@code "null"}.
+         *
+         * @param value The number to append.
+         * @return This hasher.
+         */
+        public Hasher update(Integer value) {
+            return value == null ? update("null") : update(value.intValue());
+        }
+
+        /**
+         * Appends the decimal form of a number.
+         *
+         * @param value The number to append.
+         * @return This hasher.
+         */
+        public Hasher update(int value) {
+            endSurrogatePair();
+            ensureCapacity(11);
+            long remaining = value;
+            if (remaining < 0) {
+                buffer[position++] = '-';
+                remaining = -remaining;
+            }
+            int end = position + digits(remaining);
+            for (int i = end - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + remaining % 10);
+                remaining /= 10;
+            }
+            position = end;
+            return this;
+        }
+
+        /**
+         * Completes the hash into the given array.
+         *
+         * @param output The array to write the {@value HashUtility#HASH_LENGTH} byte hash into.
+         * @param offset The offset to write the hash at.
+         * @throws IllegalArgumentException if the hash does not fit into the array.
+         */
+        public void digest(byte[] output, int offset) {
+            endSurrogatePair();
+            flush();
+            try {
+                digest.digest(output, offset, HASH_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalArgumentException("The hash does not fit into the array.", e);
+            }
+        }
+
+        /**
+         * Completes the hash and encodes it as lowercase hex.
+         *
+         * @return The hex encoded hash.
+         */
+        public String hex() {
+            digest(hash, 0);
+            encodeHex(hash, 0, HASH_LENGTH, hex);
+            return new String(hex);
+        }
+
+        private void append(char c) {
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    appendCodePoint(Character.toCodePoint(high, c));
+                    return;
                 }
-                hexString.append(hex);
+                appendCodePoint('?');
             }
+            if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else {
+                appendCodePoint(Character.isLowSurrogate(c) ? '?' : c);
+            }
+        }
 
-            return hexString.toString();
+        private void appendCodePoint(int codePoint) {
+            ensureCapacity(4);
+            if (codePoint < 0x80) {
+                buffer[position++] = (byte) codePoint;
+            } else if (codePoint < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (codePoint >> 6));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (codePoint < 0x10000) {
+                buffer[position++] = (byte) (0xe0 | (codePoint >> 12));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            }
+        }
+
+        private void endSurrogatePair() {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                appendCodePoint('?');
+            }
+        }
 
-        } catch (NoSuchAlgorithmException e) {
-            log.error("SHA-256 algorithm not found: {}", e.getMessage());
-            return null;
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            digest.update(buffer, 0, position);
+            position = 0;
+        }
+
+        private static int digits(long value) {
+            int digits = 1;
+            while (value >= 10) {
+                value /= 10;
+                digits++;
+            }
+            return digits;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package io.github.pragwl.utility;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A sorted set that also supports positional access. Elements are kept in a sorted array, so
+ * {@link #get(int)} is O(1), {@link #contains(Object)} is O(log n), and adding or removing an
+ * element is a binary search followed by an array shift. Like {@link java.util.TreeSet}, element
+ * equality is decided by the comparator. Iteration follows the sorted order.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @param <E> The type of the elements.
+ */
+public final class IndexedSortedSet<E> extends AbstractSet<E> {
+
+    private final Comparator<? super E> comparator;
+    private final ArrayList<E> elements;
+
+    /**
+     * Creates an empty set.
+     *
+     * @param comparator The order of the elements.
+     */
+    public IndexedSortedSet(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+        this.elements = new ArrayList<>();
+    }
+
+    /**
+     * Creates a set holding the given elements, sorting them once instead of inserting them one
+     * by one.
+     *
+     * @param comparator The order of the elements.
+     * @param elements The initial elements. Elements equal by the comparator are kept once.
+     */
+    public IndexedSortedSet(Comparator<? super E> comparator, Collection<? extends E> elements) {
+        this.comparator = comparator;
+        this.elements = new ArrayList<>(elements);
+        this.elements.sort(comparator);
+        removeAdjacentDuplicates();
+    }
+
+    /**
+     * Retrieves the element at a position in the sorted order.
+     *
+     * @param index The position of the element.
+     * @return The element at the position.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    /**
+     * Returns the comparator that orders this set.
+     *
+     * @return The comparator.
+     */
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public boolean add(E element) {
+        int index = Collections.binarySearch(elements, element, comparator);
+        if (index >= 0) {
+            return false;
+        }
+        elements.add(-index - 1, element);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        elements.remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        // Removing through the iterator keeps the remaining elements sorted
+        return elements.iterator();
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public void clear() {
+        elements.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int indexOf(Object o) {
+        try {
+            return Collections.binarySearch(elements, (E) o, comparator);
+        } catch (ClassCastException e) {
+            return -1;
+        }
+    }
+
+    private void removeAdjacentDuplicates() {
+        List<E> unique = new ArrayList<>(elements.size());
+        for (E element : elements) {
+            if (unique.isEmpty()
+                    || comparator.compare(unique.get(unique.size() - 1), element) != 0) {
+                unique.add(element);
+            }
+        }
+        if (unique.size() != elements.size()) {
+            elements.clear();
+            elements.addAll(unique);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package io.github.pragwl.utility;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Vault master key, derived once per session from the vault encryption key. The deliberately slow
+ * key derivation runs only when the key is unlocked; every record is then encrypted under its own
+ * subkey, expanded from the master key and a random record salt with HKDF-SHA256, which costs a
+ * single HMAC.
+ *
+ * <p>The key derivation parameters are stored in a properties file next to the encryption key,
+ * created on first use with a random salt and {@code credvault.kdf.iterations} PBKDF2 iterations.
+ * They are also written into every record, so records remain readable if the file is replaced.
+ * Changing the iteration count only takes effect for a new key, that is with {@code rotate-key}.
+ *
+ * <p>Unlocked keys are cached by a fingerprint of the secret and parameters, so the secret itself
+ * is never used as a map key. The key material is wiped by {@link #destroyAll()}, which the
+ * application calls on exit once pending changes are saved; a shutdown hook could run while the
+ * write-behind queue still encrypts its last records.
+ */
+@Slf4j
+public final class MasterKey {
+
+    /** The only supported key derivation function so far. */
+    public static final String KDF_PBKDF2_SHA256 = "pbkdf2-sha256";
+
+    /** Length of the master key salt in bytes. */
+    public static final int SALT_LENGTH = 16;
+
+    private static final int DEFAULT_ITERATIONS = 600_000;
+    private static final byte[] RECORD_KEY_INFO =
+            "credvault record key".getBytes(StandardCharsets.US_ASCII);
+    private static final Map<String, MasterKey> UNLOCKED = new ConcurrentHashMap<>();
+
+    @Getter private final byte[] salt;
+    @Getter private final int iterations;
+    private final byte[] key;
+    private volatile boolean destroyed;
+
+    private MasterKey(byte[] salt, int iterations, byte[] key) {
+        this.salt = salt;
+        this.iterations = iterations;
+        this.key = key;
+    }
+
+    /**
+     * Unlocks the master key with the parameters stored in a file, creating the file with a new
+     * salt and the configured iteration count if it does not exist yet.
+     *
+     * @param secret The vault encryption key.
+     * @param parametersFile The file holding the key derivation parameters.
+     * @return The master key.
+     * @throws UncheckedIOException if the file cannot be read or written.
+     * @throws IllegalStateException if the file is invalid or names an unsupported KDF.
+     */
+    public static MasterKey unlock(String secret, Path parametersFile) {
+        Properties parameters = new Properties();
+        try {
+            if (Files.exists(parametersFile)) {
+                try (Reader reader = Files.newBufferedReader(parametersFile)) {
+                    parameters.load(reader);
+                }
+            } else {
+                int iterations = Integer.getInteger("credvault.kdf.iterations", DEFAULT_ITERATIONS);
+                parameters.setProperty("kdf", KDF_PBKDF2_SHA256);
+                parameters.setProperty("iterations", Integer.toString(iterations));
+                parameters.setProperty(
+                        "salt",
+                        Base64.getEncoder()
+                                .encodeToString(EncryptionUtility.generateSalt(SALT_LENGTH)));
+                save(parameters, parametersFile);
+                log.info("Created key derivation parameters in {}", parametersFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to access " + parametersFile, e);
+        }
+
+        String kdf = parameters.getProperty("kdf", KDF_PBKDF2_SHA256);
+        if (!kdf.equals(KDF_PBKDF2_SHA256)) {
+            throw new IllegalStateException("Unsupported key derivation function: " + kdf);
+        }
+        try {
+            int iterations = Integer.parseInt(parameters.getProperty("iterations"));
+            byte[] salt = Base64.getDecoder().decode(parameters.getProperty("salt"));
+            if (iterations <= 0 || salt.length != SALT_LENGTH) {
+                throw new IllegalArgumentException("iterations or salt out of range");
+            }
+            return unlock(secret, salt, iterations);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalStateException(
+                    "Invalid key derivation parameters in " + parametersFile, e);
+        }
+    }
+
+    /**
+     * Unlocks the master key with the given parameters, deriving it only if it is not unlocked yet.
+     *
+     * @param secret The vault encryption key.
+     * @param salt The master key salt.
+     * @param iterations The PBKDF2 iteration count.
+     * @return The master key.
+     */
+    public static MasterKey unlock(String secret, byte[] salt, int iterations) {
+        String fingerprint = fingerprint(secret, salt, iterations);
+        MasterKey unlocked = UNLOCKED.get(fingerprint);
+        if (unlocked != null && !unlocked.destroyed) {
+            return unlocked;
+        }
+        synchronized (UNLOCKED) {
+            MasterKey masterKey = UNLOCKED.get(fingerprint);
+            if (masterKey == null || masterKey.destroyed) {
+                masterKey = derive(secret, salt, iterations);
+                UNLOCKED.put(fingerprint, masterKey);
+            }
+            return masterKey;
+        }
+    }
+
+    /**
+     * Derives a master key, bypassing the cache of unlocked keys. The caller should destroy it.
+     *
+     * @param secret The vault encryption key.
+     * @param salt The master key salt.
+     * @param iterations The PBKDF2 iteration count.
+     * @return The master key.
+     */
+    public static MasterKey derive(String secret, byte[] salt, int iterations) {
+        long start = System.nanoTime();
+        byte[] key = Encryptor.deriveMasterKey(secret, salt, iterations);
+        log.debug(
+                "Derived the master key with {} iterations in {} ms",
+                iterations,
+                (System.nanoTime() - start) / 1_000_000);
+        return new MasterKey(salt.clone(), iterations, key);
+    }
+
+    /**
+     * Checks whether this key was derived with the given parameters.
+     *
+     * @param salt The master key salt.
+     * @param iterations The PBKDF2 iteration count.
+     * @return `true` if the parameters match.
+     */
+    public boolean matches(byte[] salt, int iterations) {
+        return this.iterations == iterations && Arrays.equals(this.salt, salt);
+    }
+
+    /**
+     * Expands the subkey of a record with HKDF-SHA256.
+     *
+     * @param recordSalt The random salt of the record.
+     * @return The raw AES key of the record. The caller should wipe it after use.
+     * @throws IllegalStateException if the key was destroyed.
+     */
+    public byte[] recordKey(byte[] recordSalt) {
+        if (destroyed) {
+            throw new IllegalStateException("The master key is locked.");
+        }
+        byte[] info = new byte[RECORD_KEY_INFO.length + recordSalt.length];
+        System.arraycopy(RECORD_KEY_INFO, 0, info, 0, RECORD_KEY_INFO.length);
+        System.arraycopy(recordSalt, 0, info, RECORD_KEY_INFO.length, recordSalt.length);
+        return Encryptor.expandKey(key, info);
+    }
+
+    /** Wipes the key material. The key cannot be used afterwards. */
+    public void destroy() {
+        destroyed = true;
+        Arrays.fill(key, (byte) 0);
+    }
+
+    /** Wipes every unlocked master key, along with the pooled engines that may have used one. */
+    public static void destroyAll() {
+        synchronized (UNLOCKED) {
+            UNLOCKED.values().forEach(MasterKey::destroy);
+            UNLOCKED.clear();
+        }
+        CryptoPool.clear();
+    }
+
+    private static void save(Properties parameters, Path parametersFile) throws IOException {
+        Path parent = parametersFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = parent.resolve(parametersFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile)) {
+            parameters.store(writer, "Vault master key derivation parameters");
+        }
+        Files.move(tempFile, parametersFile, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String fingerprint(String secret, byte[] salt, int iterations) {
+        MessageDigest digest = CryptoPool.sha256();
+        digest.update(secret.getBytes(StandardCharsets.UTF_8));
+        digest.update(salt);
+        digest.update(Integer.toString(iterations).getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+}
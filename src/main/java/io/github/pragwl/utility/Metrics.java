@@ -0,0 +1,437 @@
+package io.github.pragwl.utility;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registry of counters, gauges, histograms and timers around vault operations.
+ *
+ * <p>Metrics are disabled unless {@code credvault.metrics} is {@code true}. The flag is read once
+ * into a constant, so when it is off every recording call is a branch the JIT removes, and {@link
+ * #start()} does not even read the clock. Classes create their metrics as static fields with
+ * {@link #counter}, {@link #histogram} and {@link #timer}, or register a {@link #gauge} read only
+ * when the metrics are written.
+ *
+ * <p>The metrics are written as JSON or in the Prometheus text format, chosen with {@code
+ * credvault.metrics.format}, by {@link #write(Writer)} on demand and by a shutdown hook on exit:
+ * into the file named by {@code credvault.metrics.file} if set, otherwise to the log.
+ */
+@Slf4j
+public final class Metrics {
+
+    private static final boolean ENABLED = Boolean.getBoolean("credvault.metrics");
+    private static final Format FORMAT =
+            parseFormat(System.getProperty("credvault.metrics.format", "json"));
+    private static final String FILE = System.getProperty("credvault.metrics.file");
+    private static final Map<String, Metric> REGISTRY = new ConcurrentSkipListMap<>();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /** Exponential buckets from about 1 microsecond to 17 seconds, in nanoseconds. */
+    private static final long[] TIME_BUCKETS = exponentialBuckets(1L << 10, 2, 25);
+
+    /** Exponential buckets from 1 to about 1 million. */
+    private static final long[] SIZE_BUCKETS = exponentialBuckets(1, 2, 21);
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Metrics::writeOnExit, "metrics-exit"));
+            log.info("Metrics enabled, written as {} on exit", FORMAT);
+        }
+    }
+
+    private Metrics() {
+        // Private constructor to prevent instantiation
+    }
+
+    /** Parses the configured format, falling back to JSON so a typo never breaks the vault. */
+    private static Format parseFormat(String format) {
+        try {
+            return Format.valueOf(format.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.warn(
+                    "Unknown credvault.metrics.format {}, using {}. Supported: {}",
+                    format,
+                    Format.JSON,
+                    Arrays.toString(Format.values()));
+            return Format.JSON;
+        }
+    }
+
+    /** Formats the metrics can be written in. */
+    public enum Format {
+        JSON,
+        PROMETHEUS
+    }
+
+    /**
+     * Checks whether metrics are recorded.
+     *
+     * @return `true` if {@code credvault.metrics} is set.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Starts timing an operation, to be passed to {@link Timer#stop(long)}.
+     *
+     * @return The current time in nanoseconds, or `0` if metrics are disabled.
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Creates a counter, or returns the one already registered under the name.
+     *
+     * @param name The Prometheus name, ending in {@code _total}.
+     * @param help What is counted.
+     * @return The counter.
+     */
+    public static Counter counter(String name, String help) {
+        return (Counter) REGISTRY.computeIfAbsent(name, n -> new Counter(n, help));
+    }
+
+    /**
+     * Creates a histogram of counts or sizes, or returns the one already registered under the name.
+     *
+     * @param name The Prometheus name.
+     * @param help What is observed.
+     * @return The histogram.
+     */
+    public static Histogram histogram(String name, String help) {
+        return (Histogram)
+                REGISTRY.computeIfAbsent(name, n -> new Histogram(n, help, SIZE_BUCKETS));
+    }
+
+    /**
+     * Creates a timer, or returns the one already registered under the name.
+     *
+     * @param name The Prometheus name, ending in {@code _seconds}.
+     * @param help What is timed.
+     * @return The timer.
+     */
+    public static Timer timer(String name, String help) {
+        return (Timer) REGISTRY.computeIfAbsent(name, n -> new Timer(n, help));
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge registered under the name. The supplier is called
+     * whenever the metrics are written, from any thread.
+     *
+     * @param name The Prometheus name.
+     * @param help What is measured.
+     * @param supplier Reads the current value.
+     */
+    public static void gauge(String name, String help, DoubleSupplier supplier) {
+        REGISTRY.put(name, new Gauge(name, help, supplier));
+    }
+
+    /**
+     * Writes every metric in the configured format.
+     *
+     * @param writer The destination. It is flushed but not closed.
+     * @throws IOException if writing fails.
+     */
+    public static void write(Writer writer) throws IOException {
+        write(writer, FORMAT);
+    }
+
+    /**
+     * Writes every metric in the given format.
+     *
+     * @param writer The destination. It is flushed but not closed.
+     * @param format The format to write.
+     * @throws IOException if writing fails.
+     */
+    public static void write(Writer writer, Format format) throws IOException {
+        List<Metric> metrics = new ArrayList<>(REGISTRY.values());
+        if (format == Format.PROMETHEUS) {
+            for (Metric metric : metrics) {
+                metric.writePrometheus(writer);
+            }
+        } else {
+            try (JsonGenerator json =
+                    JSON_FACTORY
+                            .createGenerator(writer)
+                            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                            .useDefaultPrettyPrinter()) {
+                json.writeStartObject();
+                for (Metric metric : metrics) {
+                    json.writeFieldName(metric.name);
+                    metric.writeJson(json);
+                }
+                json.writeEndObject();
+            }
+            writer.write(System.lineSeparator());
+        }
+        writer.flush();
+    }
+
+    private static void writeOnExit() {
+        try {
+            if (FILE == null) {
+                StringWriter writer = new StringWriter();
+                write(writer);
+                log.info("Metrics:{}{}", System.lineSeparator(), writer);
+                return;
+            }
+            Path path = Paths.get(FILE);
+            Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                write(writer);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write metrics: {}", e.getMessage());
+        }
+    }
+
+    private static long[] exponentialBuckets(long start, int factor, int count) {
+        long[] bounds = new long[count];
+        bounds[0] = start;
+        for (int i = 1; i < count; i++) {
+            bounds[i] = bounds[i - 1] * factor;
+        }
+        return bounds;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value)
+                ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+
+    /** A named metric with a help text. */
+    @Getter
+    public abstract static class Metric {
+        private final String name;
+        private final String help;
+
+        private Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract void writePrometheus(Writer writer) throws IOException;
+
+        abstract void writeJson(JsonGenerator json) throws IOException;
+
+        void writePrometheusHeader(Writer writer, String type) throws IOException {
+            writer.write("# HELP " + name + " " + help + "\n");
+            writer.write("# TYPE " + name + " " + type + "\n");
+        }
+    }
+
+    /** A count that only goes up. */
+    public static final class Counter extends Metric {
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String name, String help) {
+            super(name, help);
+        }
+
+        /** Adds one to the count. */
+        public void increment() {
+            if (ENABLED) {
+                count.increment();
+            }
+        }
+
+        /**
+         * Adds to the count.
+         *
+         * @param amount The amount to add.
+         */
+        public void add(long amount) {
+            if (ENABLED) {
+                count.add(amount);
+            }
+        }
+
+        /**
+         * Returns the count.
+         *
+         * @return The count.
+         */
+        public long get() {
+            return count.sum();
+        }
+
+        @Override
+        void writePrometheus(Writer writer) throws IOException {
+            writePrometheusHeader(writer, "counter");
+            writer.write(getName() + " " + get() + "\n");
+        }
+
+        @Override
+        void writeJson(JsonGenerator json) throws IOException {
+            json.writeNumber(get());
+        }
+    }
+
+    /** A value read when the metrics are written. */
+    public static final class Gauge extends Metric {
+        private final DoubleSupplier supplier;
+
+        private Gauge(String name, String help, DoubleSupplier supplier) {
+            super(name, help);
+            this.supplier = supplier;
+        }
+
+        @Override
+        void writePrometheus(Writer writer) throws IOException {
+            writePrometheusHeader(writer, "gauge");
+            writer.write(getName() + " " + format(supplier.getAsDouble()) + "\n");
+        }
+
+        @Override
+        void writeJson(JsonGenerator json) throws IOException {
+            json.writeNumber(supplier.getAsDouble());
+        }
+    }
+
+    /**
+     * Distribution of observed values over fixed exponential buckets. Recording is lock-free; the
+     * count, sum and buckets of a snapshot may be off by the observations made while writing it.
+     */
+    public static class Histogram extends Metric {
+        private final long[] bounds;
+        private final AtomicLongArray buckets;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name, String help, long[] bounds) {
+            super(name, help);
+            this.bounds = bounds;
+            this.buckets = new AtomicLongArray(bounds.length + 1);
+        }
+
+        /**
+         * Records an observation.
+         *
+         * @param value The observed value.
+         */
+        public void observe(long value) {
+            if (ENABLED) {
+                int bucket = Arrays.binarySearch(bounds, value);
+                buckets.incrementAndGet(bucket >= 0 ? bucket : -bucket - 1);
+                count.increment();
+                sum.add(value);
+                max.accumulateAndGet(value, Math::max);
+            }
+        }
+
+        /**
+         * Returns the number of observations.
+         *
+         * @return The count.
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /** Converts a recorded value to the exported unit. */
+        double scale(long value) {
+            return value;
+        }
+
+        /**
+         * Estimates a quantile as the upper bound of the bucket it falls into.
+         *
+         * @param quantile The quantile, between 0 and 1.
+         * @return The estimate in the exported unit, or the maximum for the last bucket.
+         */
+        double quantile(double quantile) {
+            long total = getCount();
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank && seen > 0) {
+                    return scale(Math.min(bounds[i], max.get()));
+                }
+            }
+            return scale(max.get());
+        }
+
+        @Override
+        void writePrometheus(Writer writer) throws IOException {
+            writePrometheusHeader(writer, "histogram");
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets.get(i);
+                writer.write(
+                        getName()
+                                + "_bucket{le=\""
+                                + format(scale(bounds[i]))
+                                + "\"} "
+                                + cumulative
+                                + "\n");
+            }
+            cumulative += buckets.get(bounds.length);
+            writer.write(getName() + "_bucket{le=\"+Inf\"} " + cumulative + "\n");
+            writer.write(getName() + "_sum " + format(scale(sum.sum())) + "\n");
+            writer.write(getName() + "_count " + cumulative + "\n");
+        }
+
+        @Override
+        void writeJson(JsonGenerator json) throws IOException {
+            long total = getCount();
+            json.writeStartObject();
+            json.writeNumberField("count", total);
+            json.writeNumberField("sum", scale(sum.sum()));
+            json.writeNumberField("mean", total == 0 ? 0 : scale(sum.sum()) / total);
+            json.writeNumberField("p50", quantile(0.5));
+            json.writeNumberField("p95", quantile(0.95));
+            json.writeNumberField("p99", quantile(0.99));
+            json.writeNumberField("max", scale(max.get()));
+            json.writeEndObject();
+        }
+    }
+
+    /** A histogram of durations, recorded in nanoseconds and exported in seconds. */
+    public static final class Timer extends Histogram {
+
+        private Timer(String name, String help) {
+            super(name, help, TIME_BUCKETS);
+        }
+
+        /**
+         * Records the time elapsed since {@link Metrics#start()}.
+         *
+         * @param start The value returned by {@link Metrics#start()}.
+         */
+        public void stop(long start) {
+            if (ENABLED) {
+                observe(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        double scale(long value) {
+            return value / 1e9;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.github.pragwl.utility;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded pipeline that runs tasks on worker threads and hands their results back in submission
+ * order, so a single caller can write them in order while the workers compute ahead.
+ *
+ * <p>At most {@code credvault.<name>.inflight} tasks are submitted and not yet taken, so memory
+ * stays bounded regardless of how much work there is; callers submit while {@link #isFull()} is
+ * false and take otherwise. The number of workers defaults to the number of available processors
+ * and can be set with {@code credvault.<name>.threads}.
+ *
+ * <p>The pipeline also measures the elapsed time since it was created, to log the progress and
+ * throughput of the work it carries. It belongs to the thread that created it, and {@link
+ * #close()} stops the workers, abandoning any results not taken yet.
+ */
+@Slf4j
+public final class OrderedWorkers<T> implements AutoCloseable {
+
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Getter private final int parallelism;
+    private final int maxInFlight;
+    private final ExecutorService workers;
+    private final Deque<Future<T>> inFlight;
+    private final long start = System.nanoTime();
+    private long lastProgress = start;
+
+    /**
+     * Starts the workers of a pipeline.
+     *
+     * @param name The name of the pipeline in its {@code credvault.<name>.threads} and {@code
+     *     credvault.<name>.inflight} properties.
+     * @param inFlightPerWorker The default number of tasks in flight for each worker.
+     */
+    public OrderedWorkers(String name, int inFlightPerWorker) {
+        parallelism =
+                Math.max(
+                        1,
+                        Integer.getInteger(
+                                "credvault." + name + ".threads",
+                                Runtime.getRuntime().availableProcessors()));
+        maxInFlight =
+                Math.max(
+                        parallelism,
+                        Integer.getInteger(
+                                "credvault." + name + ".inflight",
+                                parallelism * inFlightPerWorker));
+        workers = Executors.newFixedThreadPool(parallelism);
+        inFlight = new ArrayDeque<>(maxInFlight);
+    }
+
+    /**
+     * Checks whether as many tasks are in flight as the pipeline allows.
+     *
+     * @return `true` if the next result must be taken before submitting another task.
+     */
+    public boolean isFull() {
+        return inFlight.size() >= maxInFlight;
+    }
+
+    /**
+     * Checks whether every submitted task has been taken.
+     *
+     * @return `true` if no task is in flight.
+     */
+    public boolean isEmpty() {
+        return inFlight.isEmpty();
+    }
+
+    /**
+     * Runs a task on a worker. Its result is returned by {@link #take()} after those of the tasks
+     * submitted before it.
+     *
+     * @param task The task.
+     */
+    public void submit(Callable<T> task) {
+        inFlight.add(workers.submit(task));
+    }
+
+    /**
+     * Waits for the oldest task in flight and returns its result.
+     *
+     * @return The result of the task.
+     * @throws IOException if the task failed with an {@link IOException}.
+     * @throws java.util.NoSuchElementException if no task is in flight.
+     * @throws IllegalStateException if the caller is interrupted.
+     * @throws RuntimeException as thrown by the task.
+     */
+    public T take() throws IOException {
+        Future<T> future = inFlight.remove();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a worker", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("A worker failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Logs how much work is done and its throughput so far, at most once a second.
+     *
+     * @param action What is done, such as {@code Imported}.
+     * @param count The number of items done so far.
+     * @param unit What an item is, such as {@code accounts}.
+     */
+    public void logProgress(String action, long count, String unit) {
+        long now = System.nanoTime();
+        if (now - lastProgress > PROGRESS_INTERVAL_NANOS) {
+            lastProgress = now;
+            log.info(
+                    "{} {} {} so far ({} {}/s)",
+                    action,
+                    count,
+                    unit,
+                    count * 1_000_000_000L / Math.max(1, now - start),
+                    unit);
+        }
+    }
+
+    /**
+     * Logs the throughput of the whole work once it is done.
+     *
+     * @param summary What was done, such as {@code Imported 20 accounts from a.csv}.
+     * @param amount The amount the throughput is measured in.
+     * @param unit The unit of that amount, such as {@code accounts}.
+     * @return The elapsed time since the pipeline was created, in milliseconds, at least 1.
+     */
+    public long logFinished(String summary, long amount, String unit) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info(
+                "{} in {} ms ({} {}/s) with {} workers",
+                summary,
+                elapsedMillis,
+                amount * 1000L / elapsedMillis,
+                unit,
+                parallelism);
+        return elapsedMillis;
+    }
+
+    /** Stops the workers, interrupting the tasks still running. */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
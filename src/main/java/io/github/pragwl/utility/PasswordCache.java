@@ -0,0 +1,170 @@
+package io.github.pragwl.utility;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opt-in, bounded cache of decrypted passwords with a short time to live. Plaintext is held in
+ * {@code char[]} buffers that are wiped when an entry expires, is evicted or is invalidated. Every
+ * entry schedules a sweep for the moment it expires on a background thread, so plaintext does not
+ * outlive its TTL just because the cache is not accessed again, and every access also sweeps.
+ *
+ * <p>The cache is disabled unless {@code credvault.password.cache.ttl} is set to a positive
+ * number of seconds. {@code credvault.password.cache.size} bounds the number of entries.
+ */
+@Slf4j
+public final class PasswordCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 16;
+    private static final PasswordCache INSTANCE =
+            new PasswordCache(
+                    TimeUnit.SECONDS.toNanos(Long.getLong("credvault.password.cache.ttl", 0)),
+                    Integer.getInteger("credvault.password.cache.size", DEFAULT_MAX_ENTRIES));
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+    private final ScheduledExecutorService sweeper;
+
+    private PasswordCache(long ttlNanos, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Password cache size must be positive.");
+        }
+        this.ttlNanos = ttlNanos;
+        this.maxEntries = maxEntries;
+        this.entries =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                        if (size() > PasswordCache.this.maxEntries) {
+                            eldest.getValue().wipe();
+                            return true;
+                        }
+                        return false;
+                    }
+                };
+        this.sweeper = isEnabled() ? newSweeper() : null;
+        if (isEnabled()) {
+            log.info("Password cache enabled with a TTL of {} ms", ttlNanos / 1_000_000);
+        }
+    }
+
+    /**
+     * Retrieves the shared cache instance.
+     *
+     * @return The shared cache instance.
+     */
+    public static PasswordCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Checks whether caching is enabled.
+     *
+     * @return `true` if a positive TTL is configured.
+     */
+    public boolean isEnabled() {
+        return ttlNanos > 0;
+    }
+
+    /**
+     * Returns the decrypted password cached under the given key, running the decryptor if there is
+     * no live entry. When the cache is disabled the decryptor runs on every call.
+     *
+     * @param key Identifies the account the password belongs to.
+     * @param decryptor Decrypts the password. The cache takes ownership of the returned buffer.
+     * @return A copy of the plaintext, which the caller should wipe after use.
+     */
+    public char[] get(String key, Supplier<char[]> decryptor) {
+        if (!isEnabled()) {
+            return decryptor.get();
+        }
+        synchronized (entries) {
+            removeExpired();
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry.plaintext.clone();
+            }
+        }
+
+        char[] plaintext = decryptor.get();
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(plaintext, System.nanoTime() + ttlNanos));
+            if (previous != null) {
+                previous.wipe();
+            }
+        }
+        sweeper.schedule(this::removeExpired, ttlNanos, TimeUnit.NANOSECONDS);
+        return plaintext.clone();
+    }
+
+    /**
+     * Removes the entry cached under the given key, wiping its plaintext.
+     *
+     * @param key Identifies the account the password belongs to.
+     */
+    public void invalidate(String key) {
+        synchronized (entries) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                entry.wipe();
+            }
+        }
+    }
+
+    /** Removes all entries, wiping their plaintext. */
+    public void clear() {
+        synchronized (entries) {
+            entries.values().forEach(Entry::wipe);
+            entries.clear();
+        }
+    }
+
+    private static ScheduledExecutorService newSweeper() {
+        return Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-cache-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private void removeExpired() {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.isExpired(now)) {
+                    entry.wipe();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final char[] plaintext;
+        private final long expiresAtNanos;
+
+        private Entry(char[] plaintext, long expiresAtNanos) {
+            this.plaintext = plaintext;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+
+        private void wipe() {
+            Arrays.fill(plaintext, '\0');
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.pragwl.utility;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Versioned binary format of encrypted vault records.
+ *
+ * <p>Layout: {@code [magic: 4][version: 1][kdf id: 1][iterations: 4][salt length: 1][salt]
+ * [cipher id: 1][iv length: 1][iv][ciphertext and tag]}. The ciphertext is stored raw, without
+ * Base64 encoding, and the whole header is authenticated as associated data. Since the key
+ * derivation parameters travel with every record, they can change without breaking older records.
+ *
+ * <p>Records are written with a subkey of the session {@link MasterKey}: the kdf id is HKDF, the
+ * iterations are those of the master key, and the salt is the master key salt followed by a
+ * random record salt. Records whose kdf id is PBKDF2 derive their key from the encryption key and
+ * their own salt; they are still read, and rewritten with the master key by {@code rotate-key}.
+ *
+ * <p>Records written before this format are Base64 encoded AES ciphertext. Their first byte is
+ * always a Base64 character, which never matches the first magic byte, so both formats can be
+ * told apart and read side by side.
+ */
+@Slf4j
+public final class RecordFormat {
+
+    private static final byte[] MAGIC = {(byte) 0xC5, 'V', 'R', 'F'};
+    private static final byte FORMAT_VERSION = 1;
+    private static final byte KDF_PBKDF2_SHA256 = 1;
+    private static final byte KDF_HKDF_SHA256 = 2;
+    private static final int RECORD_SALT_LENGTH = 16;
+    private static final byte CIPHER_AES_GCM = 1;
+    private static final int IV_LENGTH = 12;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private RecordFormat() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Checks whether the data is a record written before the binary format was introduced.
+     *
+     * @param data The buffer holding the record between position and limit. Left untouched.
+     * @return `true` if the data does not start with the binary format magic.
+     */
+    public static boolean isLegacy(ByteBuffer data) {
+        if (data.remaining() < MAGIC.length) {
+            return true;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data.get(data.position() + i) != MAGIC[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encrypts the given data into a binary record.
+     *
+     * @param plaintext The data to encrypt.
+     * @param salt The salt for the key derivation.
+     * @param encryptionKey The encryption key.
+     * @return The encoded record, or `null` if encryption fails.
+     */
+    public static byte[] encrypt(byte[] plaintext, byte[] salt, String encryptionKey) {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        int headerLength = MAGIC.length + 1 + 1 + 4 + 1 + salt.length + 1 + 1 + iv.length;
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        header.put(MAGIC)
+                .put(FORMAT_VERSION)
+                .put(KDF_PBKDF2_SHA256)
+                .putInt(Encryptor.ITERATION_COUNT)
+                .put((byte) salt.length)
+                .put(salt)
+                .put(CIPHER_AES_GCM)
+                .put((byte) iv.length)
+                .put(iv);
+
+        byte[] cipherText =
+                Encryptor.encryptAead(
+                        plaintext,
+                        iv,
+                        header.array(),
+                        salt,
+                        Encryptor.ITERATION_COUNT,
+                        encryptionKey);
+        if (cipherText == null) {
+            return null;
+        }
+        return ByteBuffer.allocate(headerLength + cipherText.length)
+                .put(header.array())
+                .put(cipherText)
+                .array();
+    }
+
+    /**
+     * Encrypts the given data into a binary record under a subkey of the master key.
+     *
+     * @param plaintext The data to encrypt.
+     * @param masterKey The unlocked master key.
+     * @return The encoded record, or `null` if encryption fails.
+     */
+    public static byte[] encrypt(byte[] plaintext, MasterKey masterKey) {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        byte[] recordSalt = new byte[RECORD_SALT_LENGTH];
+        RANDOM.nextBytes(recordSalt);
+        byte[] masterSalt = masterKey.getSalt();
+
+        int saltLength = masterSalt.length + recordSalt.length;
+        int headerLength = MAGIC.length + 1 + 1 + 4 + 1 + saltLength + 1 + 1 + iv.length;
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        header.put(MAGIC)
+                .put(FORMAT_VERSION)
+                .put(KDF_HKDF_SHA256)
+                .putInt(masterKey.getIterations())
+                .put((byte) saltLength)
+                .put(masterSalt)
+                .put(recordSalt)
+                .put(CIPHER_AES_GCM)
+                .put((byte) iv.length)
+                .put(iv);
+
+        byte[] key = masterKey.recordKey(recordSalt);
+        try {
+            byte[] cipherText = Encryptor.encryptAead(plaintext, iv, header.array(), key);
+            if (cipherText == null) {
+                return null;
+            }
+            return ByteBuffer.allocate(headerLength + cipherText.length)
+                    .put(header.array())
+                    .put(cipherText)
+                    .array();
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Decrypts a record of either format into the given output buffer.
+     *
+     * @param data The buffer holding the record between position and limit. Left untouched.
+     * @param outputBuffer The buffer to reuse for the plaintext.
+     * @param legacySalt The salt of legacy records. Binary records carry their own salt.
+     * @param encryptionKey The encryption key. Records written with a master key unlock it with
+     *     this key and the parameters in their header, which only derives it once per session.
+     * @return A buffer holding the plaintext between position and limit, or `null` if the record is
+     *     malformed or decryption fails.
+     */
+    public static ByteBuffer decrypt(
+            ByteBuffer data, ByteBuffer outputBuffer, byte[] legacySalt, String encryptionKey) {
+        if (isLegacy(data)) {
+            return Encryptor.decrypt(data, outputBuffer, legacySalt, encryptionKey);
+        }
+
+        try {
+            ByteBuffer record = data.duplicate();
+            int start = record.position();
+            record.position(start + MAGIC.length);
+            byte version = record.get();
+            byte kdf = record.get();
+            int iterations = record.getInt();
+            byte[] salt = new byte[record.get() & 0xFF];
+            record.get(salt);
+            byte cipherId = record.get();
+            byte[] iv = new byte[record.get() & 0xFF];
+            record.get(iv);
+
+            if (version != FORMAT_VERSION
+                    || (kdf != KDF_PBKDF2_SHA256 && kdf != KDF_HKDF_SHA256)
+                    || cipherId != CIPHER_AES_GCM) {
+                log.error(
+                        "Unsupported record format: version {}, kdf {}, cipher {}",
+                        version,
+                        kdf,
+                        cipherId);
+                return null;
+            }
+
+            byte[] header = new byte[record.position() - start];
+            data.get(start, header);
+            if (kdf == KDF_PBKDF2_SHA256) {
+                return Encryptor.decryptAead(
+                        record, outputBuffer, iv, header, salt, iterations, encryptionKey);
+            }
+
+            MasterKey masterKey =
+                    MasterKey.unlock(
+                            encryptionKey,
+                            Arrays.copyOf(salt, MasterKey.SALT_LENGTH),
+                            iterations);
+            byte[] key =
+                    masterKey.recordKey(
+                            Arrays.copyOfRange(salt, MasterKey.SALT_LENGTH, salt.length));
+            try {
+                return Encryptor.decryptAead(record, outputBuffer, iv, header, key);
+            } finally {
+                Arrays.fill(key, (byte) 0);
+            }
+        } catch (RuntimeException e) {
+            log.error("Malformed record header: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -3,18 +3,29 @@ package io.github.pragwl.utility;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputFilter;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+
+import io.github.pragwl.domain.Account;
+import io.github.pragwl.domain.AccountCodec;
+import io.github.pragwl.domain.VersionHistory;
 import lombok.extern.slf4j.Slf4j;
 
-/** Utility class for serializing and deserializing objects. */
+/**
+ * Utility class for serializing and deserializing objects. Accounts and version histories are
+ * encoded with {@link AccountCodec}; other objects, and accounts written by earlier versions, use
+ * Java serialization restricted to the classes a vault record may contain.
+ */
 @Slf4j
 public final class SerializationUtil {
 
@@ -23,7 +34,23 @@ public final class SerializationUtil {
             0x12, 0x34, 0x56, 0x78, (byte) 0x90, (byte) 0xAB, (byte) 0xCD, (byte) 0xEF
     };
     private static final String ENCRYPTION_KEY;
-    private static final String ENCRYPTION_KEY_DIR = "config/encflekey.txt";
+    public static final String ENCRYPTION_KEY_DIR =
+            System.getProperty("credvault.key.file", "config/encflekey.txt");
+    public static final String KDF_PARAMETERS_DIR = ENCRYPTION_KEY_DIR + ".kdf";
+    private static final MasterKey MASTER_KEY;
+    private static final ObjectInputFilter DESERIALIZATION_FILTER =
+            ObjectInputFilter.Config.createFilter(
+                    "io.github.pragwl.domain.*;java.time.*;java.lang.*;[B;!*");
+    private static final Metrics.Timer FILE_IO_TIME =
+            Metrics.timer("credvault_file_io_seconds", "Time spent reading and writing files.");
+    private static final Metrics.Counter RECORDS_ENCRYPTED =
+            Metrics.counter(
+                    "credvault_records_encrypted_total", "Records serialized and encrypted.");
+    private static final Metrics.Counter RECORDS_DECRYPTED =
+            Metrics.counter(
+                    "credvault_records_decrypted_total", "Records decrypted and deserialized.");
+    private static final ThreadLocal<ByteBuffer> DECRYPTION_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(4096));
 
     static {
         try {
@@ -31,6 +58,13 @@ public final class SerializationUtil {
             if (Files.exists(path)) {
                 ENCRYPTION_KEY = Files.readString(path);
                 log.info("Encryption key loaded from: {}", ENCRYPTION_KEY_DIR);
+                // The only deliberately slow key derivation of the session
+                long start = System.nanoTime();
+                MASTER_KEY = MasterKey.unlock(ENCRYPTION_KEY, Paths.get(KDF_PARAMETERS_DIR));
+                log.info(
+                        "Vault unlocked with {} PBKDF2 iterations in {} ms",
+                        MASTER_KEY.getIterations(),
+                        (System.nanoTime() - start) / 1_000_000);
             } else {
                 log.error("Encryption key file not found: {}", ENCRYPTION_KEY_DIR);
                 throw new IllegalStateException(ENCRYPTION_KEY_DIR + " is required.");
@@ -66,27 +100,18 @@ public final class SerializationUtil {
                 log.info("Created directory: {}", directoryPath);
             }
 
-            // Serialize the object to a byte array
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(bos);
-            oos.writeObject(obj);
-            byte[] serializedData = bos.toByteArray();
-
-            // Encrypt the serialized data
-            byte[] encryptedData = Encryptor.encrypt(serializedData, SALT, ENCRYPTION_KEY);
-
-            if (encryptedData == null) {
-                log.error("Encryption failed during serialization.");
-                throw new RuntimeException("Encryption process is incomplete. Got an error.");
-            }
+            byte[] encryptedData = toEncryptedBytes(obj);
 
             String filePath = directoryPath + fileName + fileExtension;
 
             // Save the encrypted data to a file
+            long start = Metrics.start();
             try (FileOutputStream fos = new FileOutputStream(filePath)) {
                 fos.write(encryptedData);
-                log.info("Serialized and encrypted object to file: {}", filePath);
+            } finally {
+                FILE_IO_TIME.stop(start);
             }
+            log.debug("Serialized and encrypted object to file: {}", filePath);
 
         } catch (IOException e) {
             log.error("Serialization failed: {}", e.getMessage());
@@ -106,33 +131,302 @@ public final class SerializationUtil {
     public static Object deserializeObject(String directoryPath, String fileName) {
         String filePath = directoryPath + fileName;
 
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            // Map the encrypted data instead of copying it onto the heap
+            ByteBuffer encryptedData =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            return fromEncryptedBuffer(encryptedData, filePath);
+
+        } catch (IOException e) {
+            log.error("Deserialization failed: {}", e.getMessage());
+            log.error(Arrays.toString(e.getStackTrace()));
+            return null;
+        }
+    }
+
+    /**
+     * Serializes an object and encrypts the result with the vault encryption key, in the binary
+     * {@link RecordFormat}.
+     *
+     * @param obj The object to serialize.
+     * @return The encrypted serialized object.
+     * @throws RuntimeException if serialization or encryption fails.
+     */
+    public static byte[] toEncryptedBytes(Object obj) {
+        byte[] serializedData = null;
         try {
-            // Read the encrypted data from the file
-            byte[] encryptedData;
-            try (FileInputStream fis = new FileInputStream(filePath)) {
-                encryptedData = fis.readAllBytes();
+            // Serialize the object to a byte array
+            if (obj instanceof Account account) {
+                serializedData = AccountCodec.encode(account);
+            } else if (obj instanceof VersionHistory history) {
+                serializedData = AccountCodec.encode(history);
+            } else {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(bos);
+                oos.writeObject(obj);
+                serializedData = bos.toByteArray();
             }
 
-            // Decrypt the data
-            byte[] decryptedData = Encryptor.decrypt(encryptedData, SALT, ENCRYPTION_KEY);
+            // Encrypt the serialized data
+            byte[] encryptedData = RecordFormat.encrypt(serializedData, MASTER_KEY);
 
-            if (decryptedData == null) {
-                log.error("Decryption failed during deserialization.");
-                throw new RuntimeException("Decryption process is incomplete. Got an error.");
+            if (encryptedData == null) {
+                log.error("Encryption failed during serialization.");
+                throw new RuntimeException("Encryption process is incomplete. Got an error.");
+            }
+            RECORDS_ENCRYPTED.increment();
+            return encryptedData;
+
+        } catch (IOException e) {
+            log.error("Serialization failed: {}", e.getMessage());
+            log.error(Arrays.toString(e.getStackTrace()));
+            throw new RuntimeException("Serialization failed: " + e.getMessage(), e); // Include the exception
+        } finally {
+            if (serializedData != null) {
+                Arrays.fill(serializedData, (byte) 0);
             }
+        }
+    }
 
-            // Deserialize the decrypted byte array
-            ByteArrayInputStream bis = new ByteArrayInputStream(decryptedData);
-            ObjectInputStream ois = new ObjectInputStream(bis);
-            Object obj = ois.readObject();
+    /**
+     * Decrypts data produced by {@link #toEncryptedBytes(Object)} and deserializes the result.
+     *
+     * @param encryptedData The encrypted serialized object.
+     * @param source Describes where the data was read from, for logging.
+     * @return The deserialized object, or `null` if deserialization fails.
+     * @throws RuntimeException if decryption fails.
+     */
+    public static Object fromEncryptedBytes(byte[] encryptedData, String source) {
+        return fromEncryptedBuffer(ByteBuffer.wrap(encryptedData), source);
+    }
 
-            log.info("Deserialized and decrypted object from file: {}", filePath);
+    /**
+     * Decrypts data produced by {@link #toEncryptedBytes(Object)} and deserializes the result. The
+     * plaintext is written into a per-thread buffer that is reused across calls and wiped after
+     * deserialization, so bulk loads do not allocate a plaintext array per record.
+     *
+     * @param encryptedData The buffer holding the encrypted serialized object between position and
+     *     limit, for example a slice of a memory-mapped file. Its position is left untouched.
+     * @param source Describes where the data was read from, for logging.
+     * @return The deserialized object, or `null` if deserialization fails.
+     * @throws RuntimeException if decryption fails.
+     */
+    public static Object fromEncryptedBuffer(ByteBuffer encryptedData, String source) {
+        // Decrypt the data
+        ByteBuffer decryptedData =
+                RecordFormat.decrypt(encryptedData, DECRYPTION_BUFFER.get(), SALT, ENCRYPTION_KEY);
+
+        if (decryptedData == null) {
+            log.error("Decryption failed during deserialization.");
+            throw new RuntimeException("Decryption process is incomplete. Got an error.");
+        }
+        DECRYPTION_BUFFER.set(decryptedData);
+
+        try {
+            // Deserialize straight from the decryption buffer
+            Object obj = deserialize(decryptedData);
+
+            RECORDS_DECRYPTED.increment();
+            log.debug("Deserialized and decrypted object from: {}", source);
             return obj;
 
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException | ClassNotFoundException | IllegalArgumentException e) {
             log.error("Deserialization failed: {}", e.getMessage());
             log.error(Arrays.toString(e.getStackTrace()));
             return null;
+        } finally {
+            Arrays.fill(decryptedData.array(), 0, decryptedData.limit(), (byte) 0);
+        }
+    }
+
+    /**
+     * Re-encrypts a record written in the legacy Base64 format into the binary {@link
+     * RecordFormat}. Accounts stored with Java serialization are re-encoded with {@link
+     * AccountCodec} on the way; other objects, and records that cannot be deserialized, are copied
+     * as they are.
+     *
+     * @param encryptedData The buffer holding the legacy record between position and limit.
+     * @return The record in the binary format.
+     * @throws RuntimeException if decryption or encryption fails.
+     */
+    public static byte[] upgradeEncryptedBuffer(ByteBuffer encryptedData) {
+        return reencrypt(encryptedData, MASTER_KEY);
+    }
+
+    /**
+     * Re-encrypts a record of either format with another encryption key, in the binary {@link
+     * RecordFormat}. Used to rotate the vault encryption key.
+     *
+     * @param encryptedData The buffer holding the record between position and limit.
+     * @param targetMasterKey The master key of the new encryption key.
+     * @return The record encrypted with the target key. A serialized record that cannot be
+     *     deserialized is re-encrypted unchanged.
+     * @throws RuntimeException if decryption or encryption fails.
+     */
+    public static byte[] reencryptBuffer(ByteBuffer encryptedData, MasterKey targetMasterKey) {
+        return reencrypt(encryptedData, targetMasterKey);
+    }
+
+    private static byte[] reencrypt(ByteBuffer encryptedData, MasterKey targetMasterKey) {
+        ByteBuffer decryptedData =
+                RecordFormat.decrypt(encryptedData, DECRYPTION_BUFFER.get(), SALT, ENCRYPTION_KEY);
+
+        if (decryptedData == null) {
+            log.error("Decryption failed during re-encryption.");
+            throw new RuntimeException("Decryption process is incomplete. Got an error.");
+        }
+        DECRYPTION_BUFFER.set(decryptedData);
+
+        byte[] plaintext = null;
+        try {
+            plaintext = new byte[decryptedData.remaining()];
+            decryptedData.get(decryptedData.position(), plaintext);
+            if (!AccountCodec.isEncoded(decryptedData)) {
+                try {
+                    if (deserialize(decryptedData.duplicate()) instanceof Account account) {
+                        Arrays.fill(plaintext, (byte) 0);
+                        plaintext = AccountCodec.encode(account);
+                    }
+                } catch (IOException | ClassNotFoundException e) {
+                    // The plaintext is carried over as it is, so the record loses nothing
+                    log.warn("Keeping a record that cannot be deserialized: {}", e.getMessage());
+                }
+            }
+            byte[] reencrypted = RecordFormat.encrypt(plaintext, targetMasterKey);
+            if (reencrypted == null) {
+                log.error("Encryption failed during re-encryption.");
+                throw new RuntimeException("Encryption process is incomplete. Got an error.");
+            }
+            return reencrypted;
+        } finally {
+            if (plaintext != null) {
+                Arrays.fill(plaintext, (byte) 0);
+            }
+            Arrays.fill(decryptedData.array(), 0, decryptedData.limit(), (byte) 0);
+        }
+    }
+
+    /**
+     * Decrypts a record of either format without deserializing it.
+     *
+     * @param encryptedData The buffer holding the record between position and limit.
+     * @return A copy of the serialized object, which the caller should wipe after use.
+     * @throws RuntimeException if decryption fails.
+     */
+    public static byte[] decryptToBytes(ByteBuffer encryptedData) {
+        ByteBuffer decryptedData =
+                RecordFormat.decrypt(encryptedData, DECRYPTION_BUFFER.get(), SALT, ENCRYPTION_KEY);
+
+        if (decryptedData == null) {
+            log.error("Decryption failed while reading a record.");
+            throw new RuntimeException("Decryption process is incomplete. Got an error.");
+        }
+        DECRYPTION_BUFFER.set(decryptedData);
+        try {
+            byte[] plaintext = new byte[decryptedData.remaining()];
+            decryptedData.get(decryptedData.position(), plaintext);
+            return plaintext;
+        } finally {
+            Arrays.fill(decryptedData.array(), 0, decryptedData.limit(), (byte) 0);
+        }
+    }
+
+    /**
+     * Encrypts an already serialized object with the vault encryption key, in the binary {@link
+     * RecordFormat}.
+     *
+     * @param serializedData The serialized object, as returned by {@link #decryptToBytes}.
+     * @return The encrypted record.
+     * @throws RuntimeException if encryption fails.
+     */
+    public static byte[] encryptBytes(byte[] serializedData) {
+        byte[] encryptedData = RecordFormat.encrypt(serializedData, MASTER_KEY);
+        if (encryptedData == null) {
+            log.error("Encryption failed while writing a record.");
+            throw new RuntimeException("Encryption process is incomplete. Got an error.");
+        }
+        return encryptedData;
+    }
+
+    /**
+     * Encrypts and authenticates data with AES-GCM under a key derived from the vault encryption
+     * key, for example a chunk of a backup archive.
+     *
+     * @param plaintext The data to encrypt.
+     * @param iv The unique nonce of this encryption.
+     * @param associatedData Data authenticated along with the ciphertext but not encrypted.
+     * @param salt The salt for the key derivation.
+     * @return The ciphertext followed by the authentication tag.
+     * @throws RuntimeException if encryption fails.
+     */
+    public static byte[] seal(byte[] plaintext, byte[] iv, byte[] associatedData, byte[] salt) {
+        byte[] sealed =
+                Encryptor.encryptAead(
+                        plaintext,
+                        iv,
+                        associatedData,
+                        salt,
+                        Encryptor.ITERATION_COUNT,
+                        ENCRYPTION_KEY);
+        if (sealed == null) {
+            throw new RuntimeException("Encryption process is incomplete. Got an error.");
+        }
+        return sealed;
+    }
+
+    /**
+     * Returns a fingerprint of the vault encryption key, which tells whether data was sealed with
+     * the current key without revealing anything about it.
+     *
+     * @return The lowercase hex SHA-256 hash of a label and the key.
+     */
+    public static String keyFingerprint() {
+        return HashUtility.hasher()
+                .update("credvault key fingerprint:")
+                .update(ENCRYPTION_KEY)
+                .hex();
+    }
+
+    /**
+     * Decrypts and authenticates data sealed with {@link #seal}.
+     *
+     * @param sealed The ciphertext and tag.
+     * @param iv The nonce the data was sealed with.
+     * @param associatedData The associated data the data was sealed with.
+     * @param salt The salt for the key derivation.
+     * @return The plaintext.
+     * @throws RuntimeException if decryption or authentication fails.
+     */
+    public static byte[] open(byte[] sealed, byte[] iv, byte[] associatedData, byte[] salt) {
+        ByteBuffer plaintext =
+                Encryptor.decryptAead(
+                        ByteBuffer.wrap(sealed),
+                        ByteBuffer.allocate(sealed.length),
+                        iv,
+                        associatedData,
+                        salt,
+                        Encryptor.ITERATION_COUNT,
+                        ENCRYPTION_KEY);
+        if (plaintext == null) {
+            throw new RuntimeException("Decryption or authentication failed.");
+        }
+        try {
+            return Arrays.copyOfRange(plaintext.array(), 0, plaintext.limit());
+        } finally {
+            Arrays.fill(plaintext.array(), (byte) 0);
+        }
+    }
+
+    private static Object deserialize(ByteBuffer data) throws IOException, ClassNotFoundException {
+        if (AccountCodec.isEncoded(data)) {
+            return AccountCodec.decodeRecord(data);
         }
+        ByteArrayInputStream bis =
+                new ByteArrayInputStream(
+                        data.array(), data.arrayOffset() + data.position(), data.remaining());
+        ObjectInputStream ois = new ObjectInputStream(bis);
+        ois.setObjectInputFilter(DESERIALIZATION_FILTER);
+        return ois.readObject();
     }
-}
\ No newline at end of file
+}
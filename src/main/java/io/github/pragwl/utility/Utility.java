@@ -12,7 +12,8 @@ import lombok.NoArgsConstructor;
 public final class Utility {
 
     /**
-     * Retrieves a value at a specific index from a Set.
+     * Retrieves a value at a specific index from a Set. An {@link IndexedSortedSet} is accessed
+     * directly; other sets are iterated up to the index.
      *
      * @param set The Set to retrieve the value from.
      * @param index The index of the value to retrieve.
@@ -25,6 +26,10 @@ public final class Utility {
             throw new IndexOutOfBoundsException("Index out of bounds: " + index);
         }
 
+        if (set instanceof IndexedSortedSet<T> indexedSet) {
+            return indexedSet.get(index);
+        }
+
         int i = 0;
         for (T element : set) {
             if (i == index) {
@@ -43,6 +48,41 @@ public final class Utility {
      * @return A unique file name for the Account object.
      */
     public static String getFileNameForAccountObject(Account account) {
-        return HashUtility.hash(account.getName() + account.getId() + account.getVersion());
+        return accountHasher(account).hex();
+    }
+
+    /**
+     * Generates the binary form of the file name for an Account object, for indexes that key
+     * records without going through strings. {@link HashUtility#toHex(byte[])} turns it into the
+     * file name.
+     *
+     * @param account The Account object.
+     * @return The {@value HashUtility#HASH_LENGTH} byte hash the file name is derived from.
+     */
+    public static byte[] getFileKeyForAccountObject(Account account) {
+        byte[] key = new byte[HashUtility.HASH_LENGTH];
+        getFileKeyForAccountObject(account, key, 0);
+        return key;
+    }
+
+    /**
+     * Writes the binary form of the file name for an Account object into a caller's buffer, so
+     * rebuilding an index allocates nothing per record.
+     *
+     * @param account The Account object.
+     * @param key The array to write the {@value HashUtility#HASH_LENGTH} byte hash into.
+     * @param offset The offset to write the hash at.
+     * @throws IllegalArgumentException if the hash does not fit into the array.
+     */
+    public static void getFileKeyForAccountObject(Account account, byte[] key, int offset) {
+        accountHasher(account).digest(key, offset);
+    }
+
+    private static HashUtility.Hasher accountHasher(Account account) {
+        // Same bytes as hashing name + id + version, without building that string
+        return HashUtility.hasher()
+                .update(account.getName())
+                .update(account.getId())
+                .update(account.getVersion());
     }
 }
@@ -0,0 +1,143 @@
+package io.github.pragwl.domain;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.pragwl.utility.EncryptionUtility;
+import io.github.pragwl.utility.Encryptor;
+import org.junit.jupiter.api.Test;
+
+class AccountCodecTest {
+
+    private static final LocalDateTime CREATED_ON = LocalDateTime.of(2024, 2, 29, 13, 45, 7, 123);
+
+    @Test
+    void roundTripsAccountWithAesGcmPassword() {
+        Account account = Account.newAccount("github", "alice", "correct horse");
+
+        byte[] encoded = AccountCodec.encode(account);
+        assertTrue(AccountCodec.isEncoded(ByteBuffer.wrap(encoded)));
+        Account decoded = AccountCodec.decode(ByteBuffer.wrap(encoded));
+
+        assertAccountEquals(account, decoded);
+        assertEquals(Password.SCHEME_AES_GCM, decoded.getPassword().getScheme());
+        assertEquals("correct horse", decoded.getPassword().getDecryptedPassword());
+    }
+
+    @Test
+    void roundTripsAccountWithLegacyBase64Password() {
+        // Written before AES-GCM: Base64 AES ciphertext under a PBKDF2 key of the salt
+        byte[] salt = EncryptionUtility.generateSalt(16);
+        String encryptionKey = EncryptionUtility.generateEncryptionKey(256);
+        byte[] cipherText =
+                Encryptor.encrypt(
+                        "old secret".getBytes(StandardCharsets.UTF_8), salt, encryptionKey);
+        Account account =
+                Account.builder()
+                        .name("mail")
+                        .id("bob")
+                        .password(
+                                new Password(
+                                        new String(cipherText, StandardCharsets.US_ASCII),
+                                        salt,
+                                        encryptionKey))
+                        .createdOn(CREATED_ON)
+                        .updateOn(CREATED_ON.plusDays(3))
+                        .version(300)
+                        .build();
+
+        Account decoded = AccountCodec.decode(ByteBuffer.wrap(AccountCodec.encode(account)));
+
+        assertAccountEquals(account, decoded);
+        assertEquals(Password.SCHEME_PBKDF2, decoded.getPassword().getScheme());
+        assertEquals("old secret", decoded.getPassword().getDecryptedPassword());
+    }
+
+    @Test
+    void roundTripsAccountWithoutOptionalFields() {
+        Account account =
+                Account.builder()
+                        .name("n\u00e9v")
+                        .id("\u00fcn\u00efcode")
+                        .createdOn(CREATED_ON)
+                        .build();
+
+        Account decoded = AccountCodec.decode(ByteBuffer.wrap(AccountCodec.encode(account)));
+
+        assertAccountEquals(account, decoded);
+        assertNull(decoded.getPassword());
+        assertNull(decoded.getUpdateOn());
+        assertNull(decoded.getVersion());
+    }
+
+    @Test
+    void roundTripsVersionHistory() {
+        VersionHistory history = new VersionHistory("github", CREATED_ON);
+        history.record(2, VersionHistory.Location.ACTIVE, "github_2");
+        history.record(1, VersionHistory.Location.ARCHIVED, "github_1");
+
+        Object decoded = AccountCodec.decodeRecord(ByteBuffer.wrap(AccountCodec.encode(history)));
+
+        VersionHistory decodedHistory = (VersionHistory) decoded;
+        assertEquals("github", decodedHistory.getName());
+        assertEquals(CREATED_ON, decodedHistory.getCreatedOn());
+        assertEquals(List.of(1, 2), versions(decodedHistory));
+        assertEquals(
+                VersionHistory.Location.ARCHIVED, decodedHistory.getEntries().get(0).getLocation());
+        assertEquals("github_2", decodedHistory.getEntries().get(1).getStorageKey());
+    }
+
+    @Test
+    void decodesAccountRecordsThroughDecodeRecord() {
+        Account account = Account.builder().name("a").id("b").createdOn(CREATED_ON).build();
+
+        Object decoded = AccountCodec.decodeRecord(ByteBuffer.wrap(AccountCodec.encode(account)));
+
+        assertAccountEquals(account, (Account) decoded);
+    }
+
+    @Test
+    void rejectsTruncatedAccount() {
+        byte[] encoded = AccountCodec.encode(Account.newAccount("github", "alice", "secret"));
+        ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(encoded, encoded.length - 3));
+
+        assertThrows(IllegalArgumentException.class, () -> AccountCodec.decode(truncated));
+    }
+
+    @Test
+    void doesNotMistakeJavaSerializationForEncodedRecords() {
+        ByteBuffer serialized = ByteBuffer.wrap(new byte[] {(byte) 0xAC, (byte) 0xED, 0, 5});
+
+        assertFalse(AccountCodec.isEncoded(serialized));
+        assertThrows(IllegalArgumentException.class, () -> AccountCodec.decode(serialized));
+    }
+
+    private static void assertAccountEquals(Account expected, Account actual) {
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getCreatedOn(), actual.getCreatedOn());
+        assertEquals(expected.getUpdateOn(), actual.getUpdateOn());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        if (expected.getPassword() != null) {
+            assertEquals(expected.getPassword().getPassword(), actual.getPassword().getPassword());
+            assertArrayEquals(expected.getPassword().getSalt(), actual.getPassword().getSalt());
+            assertEquals(
+                    expected.getPassword().getEncryptionKey(),
+                    actual.getPassword().getEncryptionKey());
+        }
+    }
+
+    private static List<Integer> versions(VersionHistory history) {
+        return history.getEntries().stream().map(VersionHistory.Entry::getVersion).toList();
+    }
+}
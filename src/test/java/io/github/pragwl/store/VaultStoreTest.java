@@ -0,0 +1,173 @@
+package io.github.pragwl.store;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VaultStoreTest {
+
+    private static final VaultStore.Section SECTION = VaultStore.Section.ACTIVE;
+    /** The record closing a transaction: length, type, section, empty key and CRC. */
+    private static final int COMMIT_RECORD_LENGTH = 4 + 1 + 1 + 2 + 4;
+
+    @TempDir Path directory;
+
+    @Test
+    void reopensCommittedRecordsInFirstWriteOrder() throws IOException {
+        Path log = directory.resolve("vault.log");
+        try (VaultStore store = VaultStore.open(log)) {
+            write(store, "b", "a", "c");
+            write(store, "a");
+        }
+
+        try (VaultStore store = VaultStore.open(log)) {
+            assertEquals(List.of("b", "a", "c"), store.keys(SECTION));
+            assertArrayEquals(payload("a"), store.readEncrypted(SECTION, "a"));
+            assertArrayEquals(payload("c"), store.readEncrypted(SECTION, "c"));
+        }
+    }
+
+    @Test
+    void truncatesTornTailAndKeepsEveryCopy() throws IOException {
+        Path log = directory.resolve("vault.log");
+        try (VaultStore store = VaultStore.open(log)) {
+            write(store, "a", "b");
+        }
+        long committedLength = Files.size(log);
+
+        appendTornRecord(log, "c");
+        try (VaultStore store = VaultStore.open(log)) {
+            assertEquals(List.of("a", "b"), store.keys(SECTION));
+        }
+        assertEquals(committedLength, Files.size(log));
+        Path firstCopy = directory.resolve("vault.log.corrupt");
+        byte[] firstCopyBytes = Files.readAllBytes(firstCopy);
+        assertTrue(firstCopyBytes.length > committedLength);
+
+        appendTornRecord(log, "d");
+        try (VaultStore store = VaultStore.open(log)) {
+            assertEquals(List.of("a", "b"), store.keys(SECTION));
+        }
+        assertArrayEquals(firstCopyBytes, Files.readAllBytes(firstCopy));
+        assertTrue(Files.exists(directory.resolve("vault.log.corrupt.1")));
+    }
+
+    @Test
+    void truncatesZeroFilledTail() throws IOException {
+        Path log = directory.resolve("vault.log");
+        try (VaultStore store = VaultStore.open(log)) {
+            write(store, "a");
+        }
+        long committedLength = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4096), committedLength);
+        }
+
+        try (VaultStore store = VaultStore.open(log)) {
+            assertEquals(List.of("a"), store.keys(SECTION));
+        }
+        assertEquals(committedLength, Files.size(log));
+    }
+
+    @Test
+    void refusesToOpenLogDamagedBeforeItsEnd() throws IOException {
+        Path log = directory.resolve("vault.log");
+        try (VaultStore store = VaultStore.open(log)) {
+            write(store, "a", "b", "c");
+        }
+        // Flip a payload byte of the first record, which the later records follow
+        byte[] damaged = Files.readAllBytes(log);
+        damaged[VaultStore.HEADER_LENGTH + 4 + 1 + 1 + 2 + 1] ^= 0x01;
+        Files.write(log, damaged);
+
+        assertThrows(IOException.class, () -> VaultStore.open(log).close());
+        assertArrayEquals(damaged, Files.readAllBytes(log));
+        assertFalse(Files.exists(directory.resolve("vault.log.corrupt")));
+    }
+
+    @Test
+    void refusesToOpenLogWithLengthPastItsEndBeforeCompleteRecords() throws IOException {
+        Path log = directory.resolve("vault.log");
+        try (VaultStore store = VaultStore.open(log)) {
+            write(store, "a", "b", "c");
+        }
+        byte[] damaged = Files.readAllBytes(log);
+        ByteBuffer.wrap(damaged).putInt(VaultStore.HEADER_LENGTH, damaged.length);
+        Files.write(log, damaged);
+
+        assertThrows(IOException.class, () -> VaultStore.open(log).close());
+        assertArrayEquals(damaged, Files.readAllBytes(log));
+    }
+
+    @Test
+    void rollsBackUncommittedTransactionAtTheEnd() throws IOException {
+        Path log = directory.resolve("vault.log");
+        long committedLength;
+        try (VaultStore store = VaultStore.open(log)) {
+            write(store, "a");
+            committedLength = store.getLogLength();
+            write(store, "b", "c");
+        }
+        // Drop the commit record of the second transaction, as if the process died before it
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - COMMIT_RECORD_LENGTH);
+        }
+
+        try (VaultStore store = VaultStore.open(log)) {
+            assertEquals(List.of("a"), store.keys(SECTION));
+            assertNull(store.readEncrypted(SECTION, "b"));
+        }
+        assertEquals(committedLength, Files.size(log));
+    }
+
+    @Test
+    void rollsBackBulkTransactionClosedWithoutCommit() throws IOException {
+        Path log = directory.resolve("vault.log");
+        try (VaultStore store = VaultStore.open(log)) {
+            write(store, "a");
+            long committedLength = store.getLogLength();
+            try (VaultStore.BulkTransaction transaction = store.beginBulk()) {
+                transaction.putEncrypted(SECTION, "b", payload("b"));
+            }
+            assertEquals(committedLength, Files.size(log));
+            assertEquals(List.of("a"), store.keys(SECTION));
+        }
+    }
+
+    private static void write(VaultStore store, String... keys) {
+        try (VaultStore.BulkTransaction transaction = store.beginBulk()) {
+            for (String key : keys) {
+                transaction.putEncrypted(SECTION, key, payload(key));
+            }
+            transaction.commit();
+        }
+    }
+
+    /** Appends the first half of a record, as left by a crash in the middle of a write. */
+    private static void appendTornRecord(Path log, String key) throws IOException {
+        ByteBuffer record = VaultStore.encodePut(SECTION, key, payload(key));
+        record.limit(record.limit() / 2);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            VaultStore.writeFully(channel, record, channel.size());
+        }
+    }
+
+    private static byte[] payload(String key) {
+        return ("payload of " + key).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.pragwl.utility;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class RecordFormatTest {
+
+    private static final String ENCRYPTION_KEY = EncryptionUtility.generateEncryptionKey(256);
+    private static final byte[] SALT = EncryptionUtility.generateSalt(16);
+    private static final byte[] PLAINTEXT =
+            "a record that is longer than the output buffer".getBytes(StandardCharsets.UTF_8);
+    private static final int ITERATIONS = 1000;
+
+    @Test
+    void roundTripsRecordUnderMasterKey() {
+        MasterKey masterKey =
+                MasterKey.unlock(
+                        ENCRYPTION_KEY,
+                        EncryptionUtility.generateSalt(MasterKey.SALT_LENGTH),
+                        ITERATIONS);
+
+        byte[] record = RecordFormat.encrypt(PLAINTEXT, masterKey);
+
+        assertFalse(RecordFormat.isLegacy(ByteBuffer.wrap(record)));
+        assertArrayEquals(PLAINTEXT, decrypt(record, ENCRYPTION_KEY));
+    }
+
+    @Test
+    void roundTripsRecordUnderItsOwnSalt() {
+        byte[] record = RecordFormat.encrypt(PLAINTEXT, SALT, ENCRYPTION_KEY);
+
+        assertFalse(RecordFormat.isLegacy(ByteBuffer.wrap(record)));
+        assertArrayEquals(PLAINTEXT, decrypt(record, ENCRYPTION_KEY));
+    }
+
+    @Test
+    void decryptsLegacyBase64Record() {
+        byte[] record = Encryptor.encrypt(PLAINTEXT, SALT, ENCRYPTION_KEY);
+
+        assertTrue(RecordFormat.isLegacy(ByteBuffer.wrap(record)));
+        assertArrayEquals(PLAINTEXT, decrypt(record, ENCRYPTION_KEY));
+    }
+
+    @Test
+    void decryptsRecordHeldInTheMiddleOfABuffer() {
+        byte[] record = RecordFormat.encrypt(PLAINTEXT, SALT, ENCRYPTION_KEY);
+        ByteBuffer data = ByteBuffer.allocate(record.length + 10);
+        data.position(7).put(record).flip().position(7);
+
+        ByteBuffer plaintext =
+                RecordFormat.decrypt(data, ByteBuffer.allocate(8), SALT, ENCRYPTION_KEY);
+
+        assertArrayEquals(PLAINTEXT, toArray(plaintext));
+        assertArrayEquals(record, toArray(data));
+    }
+
+    @Test
+    void rejectsTamperedHeader() {
+        byte[] record = RecordFormat.encrypt(PLAINTEXT, SALT, ENCRYPTION_KEY);
+        // The last byte of the salt, which is authenticated but not encrypted
+        record[4 + 1 + 1 + 4 + 1 + SALT.length - 1] ^= 0x01;
+
+        assertNull(decrypt(record, ENCRYPTION_KEY));
+    }
+
+    @Test
+    void rejectsRecordUnderAnotherKey() {
+        MasterKey masterKey =
+                MasterKey.unlock(
+                        ENCRYPTION_KEY,
+                        EncryptionUtility.generateSalt(MasterKey.SALT_LENGTH),
+                        ITERATIONS);
+        byte[] record = RecordFormat.encrypt(PLAINTEXT, masterKey);
+
+        assertNull(decrypt(record, EncryptionUtility.generateEncryptionKey(256)));
+    }
+
+    private static byte[] decrypt(byte[] record, String encryptionKey) {
+        ByteBuffer plaintext =
+                RecordFormat.decrypt(
+                        ByteBuffer.wrap(record), ByteBuffer.allocate(8), SALT, encryptionKey);
+        return plaintext == null ? null : toArray(plaintext);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}